@@ -0,0 +1,170 @@
+package st.foglo.gerke_decoder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import st.foglo.gerke_decoder.GerkeLib.Death;
+import st.foglo.gerke_decoder.GerkeLib.DeathException;
+import st.foglo.gerke_decoder.GerkeLib.Info;
+import st.foglo.gerke_decoder.GerkeLib.Warning;
+import st.foglo.gerke_decoder.format.Formatter;
+import st.foglo.gerke_decoder.wave.Wav;
+
+/**
+ * Decodes many files in one process, on a fixed pool of threads. The
+ * text from each file is written to a file of its own. A fatal error
+ * while decoding a file fails that file only.
+ */
+final class BatchDecoder {
+
+    private final DecoderConfig cfg;
+    private final int nofThreads;
+
+    /**
+     * Outcome of decoding one file.
+     */
+    private static final class Result {
+        final String file;
+        final boolean ok;
+        final double seconds;       // length of decoded audio
+        final long millis;          // wall time spent
+        final String detail;        // digest, or reason for failure
+
+        Result(String file, boolean ok, double seconds, long millis, String detail) {
+            this.file = file;
+            this.ok = ok;
+            this.seconds = seconds;
+            this.millis = millis;
+            this.detail = detail;
+        }
+    }
+
+    BatchDecoder(DecoderConfig cfg, int nofThreads) {
+        this.cfg = cfg;
+        this.nofThreads = nofThreads;
+    }
+
+    /**
+     * Decodes all files given as arguments and writes a summary table.
+     * Returns the nof. files that could not be decoded.
+     */
+    int run() throws IOException, InterruptedException {
+
+        if (cfg.hasPlots()) {
+            new Death("plots are not supported in batch mode");
+        }
+
+        final List<String> files = new ArrayList<String>();
+        for (int k = 0; k < GerkeLib.nofArguments(); k++) {
+            addFiles(GerkeLib.getArgument(k), files);
+        }
+        new Info("batch: %d files, %d threads", files.size(), nofThreads);
+
+        final ExecutorService pool = Executors.newFixedThreadPool(nofThreads);
+        final List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        for (final String file : files) {
+            futures.add(pool.submit(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return decode(file);
+                }
+            }));
+        }
+        pool.shutdown();
+
+        int nofFailed = 0;
+        System.out.println(String.format("%-6s %9s %9s  %-32s  %s", "STATUS", "AUDIO_S", "WALL_MS", "DIGEST", "FILE"));
+        for (int i = 0; i < files.size(); i++) {
+            Result r;
+            try {
+                r = futures.get(i).get();
+            }
+            catch (ExecutionException e) {
+                r = new Result(files.get(i), false, 0.0, 0, e.getCause().toString());
+            }
+            if (!r.ok) {
+                nofFailed++;
+            }
+            System.out.println(String.format("%-6s %9.1f %9d  %-32s  %s",
+                    r.ok ? "ok" : "FAILED", r.seconds, r.millis, r.ok ? r.detail : "-", r.file));
+            if (!r.ok) {
+                System.out.println(String.format("       %s", r.detail));
+            }
+        }
+        return nofFailed;
+    }
+
+    private Result decode(String file) {
+
+        GerkeLib.survive();
+
+        final long tBegin = System.currentTimeMillis();
+        final File textFile = new File(file + ".txt");
+        PrintStream out = null;
+        try {
+            final Wav w = new Wav(file, cfg.offset, cfg.length);
+            out = new PrintStream(new FileOutputStream(textFile), false, "UTF-8");
+            final Formatter formatter = new Formatter(cfg, out);
+            GerkeDecoder.decode(cfg, w, formatter, cfg.offset);
+            out.flush();
+            if (out.checkError()) {
+                throw new IOException("cannot write: " + textFile);
+            }
+            return new Result(file, true, (double) w.nofFrames/w.frameRate,
+                    System.currentTimeMillis() - tBegin, formatter.getDigest());
+        }
+        catch (DeathException e) {
+            return new Result(file, false, 0.0, System.currentTimeMillis() - tBegin, e.getMessage());
+        }
+        catch (Exception e) {
+            new Warning(String.format("%s: %s", file, e.toString()));
+            return new Result(file, false, 0.0, System.currentTimeMillis() - tBegin, e.toString());
+        }
+        finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    private static void addFiles(String arg, List<String> files) throws IOException {
+        if (arg.startsWith("@")) {
+            final BufferedReader br = new BufferedReader(new FileReader(arg.substring(1)));
+            try {
+                for (String line = br.readLine(); line != null; line = br.readLine()) {
+                    if (!line.trim().isEmpty()) {
+                        files.add(line.trim());
+                    }
+                }
+            }
+            finally {
+                br.close();
+            }
+        }
+        else if (new File(arg).isDirectory()) {
+            final File[] entries = new File(arg).listFiles();
+            Arrays.sort(entries);
+            for (File f : entries) {
+                final String name = f.getName().toLowerCase();
+                if (f.isFile() && (name.endsWith(".wav") || name.endsWith(".mp3"))) {
+                    files.add(f.getPath());
+                }
+            }
+        }
+        else {
+            files.add(arg);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package st.foglo.gerke_decoder;
+
+import uk.me.berndporr.iirj.Biquad;
+import uk.me.berndporr.iirj.Cascade;
+
+/**
+ * Direct form II biquad cascade with the coefficients of an iirj filter
+ * design, kept in flat arrays. The arithmetic is the same as in iirj,
+ * but there is no per-stage object dispatch, and blocks are filtered one
+ * stage at a time with the state held in locals.
+ */
+final class BiquadCascade {
+
+    private final int nofStages;
+
+    private final double[] a1;
+    private final double[] a2;
+    private final double[] b0;
+    private final double[] b1;
+    private final double[] b2;
+
+    private final double[] v1;
+    private final double[] v2;
+
+    BiquadCascade(Cascade design) {
+        nofStages = design.getNumBiquads();
+        a1 = new double[nofStages];
+        a2 = new double[nofStages];
+        b0 = new double[nofStages];
+        b1 = new double[nofStages];
+        b2 = new double[nofStages];
+        v1 = new double[nofStages];
+        v2 = new double[nofStages];
+        for (int s = 0; s < nofStages; s++) {
+            final Biquad bq = design.getBiquad(s);
+            final double a0 = bq.getA0();
+            a1[s] = bq.getA1()/a0;
+            a2[s] = bq.getA2()/a0;
+            b0[s] = bq.getB0()/a0;
+            b1[s] = bq.getB1()/a0;
+            b2[s] = bq.getB2()/a0;
+        }
+    }
+
+    double filter(double in) {
+        double x = in;
+        for (int s = 0; s < nofStages; s++) {
+            final double w = x - a1[s]*v1[s] - a2[s]*v2[s];
+            x = b0[s]*w + b1[s]*v1[s] + b2[s]*v2[s];
+            v2[s] = v1[s];
+            v1[s] = w;
+        }
+        return x;
+    }
+
+    /**
+     * Filters len values from offset off. The arrays may be the same.
+     */
+    void filter(double[] in, int off, int len, double[] out) {
+        double[] src = in;
+        for (int s = 0; s < nofStages; s++) {
+            final double c1 = a1[s];
+            final double c2 = a2[s];
+            final double d0 = b0[s];
+            final double d1 = b1[s];
+            final double d2 = b2[s];
+            double s1 = v1[s];
+            double s2 = v2[s];
+            for (int i = off; i < off + len; i++) {
+                final double w = src[i] - c1*s1 - c2*s2;
+                out[i] = d0*w + d1*s1 + d2*s2;
+                s2 = s1;
+                s1 = w;
+            }
+            v1[s] = s1;
+            v2[s] = s2;
+            src = out;
+        }
+        if (nofStages == 0 && in != out) {
+            System.arraycopy(in, off, out, off, len);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package st.foglo.gerke_decoder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import st.foglo.gerke_decoder.GerkeDecoder.HiddenOpts;
+import st.foglo.gerke_decoder.GerkeLib.Death;
+
+/**
+ * Options that control decoding, parsed and checked once per run. An
+ * instance is immutable and may be shared by concurrent decodings.
+ *
+ * Options that control how the program runs (batch mode, verbosity) are
+ * not part of the configuration.
+ *
+ * A configuration can also be built without the command line, from a map
+ * of option values keyed by the GerkeDecoder.O_* names; options that are
+ * not given get the values of defaultValue().
+ */
+public final class DecoderConfig {
+
+    public final int offset;                // seconds
+    public final int length;                // seconds, -1 for all
+
+    public final double freqLow;            // frequency search range, Hz
+    public final double freqHigh;
+    public final int freq;                  // Hz, -1 if not given
+
+    public final double wpm;
+    public final double spaceExp;
+    public final int clipLevel;             // -1 if not given
+    public final double tsStretch;
+    public final double sigma;              // TU
+    public final double cohSize;            // TU
+    public final double segSize;            // seconds
+
+    public final int decoder;
+    public final double level;
+
+    public final boolean timestamps;
+    public final String textCase;           // L, U or C
+    public final int lineLength;
+
+    public final double plotBegin;          // seconds
+    public final double plotLength;         // seconds, -1 for all
+    public final boolean freqPlot;
+    public final boolean ampPlot;
+    public final boolean phasePlot;
+    public final boolean freqStabilityPlot;
+
+    public final int latency;               // seconds, when decoding a stream
+    public final int rawRate;               // frames/s of raw PCM input, -1 for a WAV stream
+    public final int rawBits;               // bits per sample, -1 for a WAV stream
+    public final int rawChannels;           // -1 for a WAV stream
+
+    private final int[] histRequests;
+
+    private final String[] hidden;
+    private final double[] hiddenDouble;
+    private final int[] hiddenInt;
+
+    private final Map<String, String> values;
+
+    /**
+     * Values of options that are not given. Flags are off by default.
+     */
+    private static final Map<String, String> DEFAULTS = new HashMap<String, String>();
+
+    static {
+        DEFAULTS.put(GerkeDecoder.O_OFFSET, "0");
+        DEFAULTS.put(GerkeDecoder.O_LENGTH, "-1");
+        DEFAULTS.put(GerkeDecoder.O_FRANGE, "400,1200");
+        DEFAULTS.put(GerkeDecoder.O_FREQ, "-1");
+        DEFAULTS.put(GerkeDecoder.O_WPM, "15.0");
+        DEFAULTS.put(GerkeDecoder.O_SPACE_EXP, "1.0");
+        DEFAULTS.put(GerkeDecoder.O_CLIPPING, "-1");
+        DEFAULTS.put(GerkeDecoder.O_STIME, "1.0");
+        DEFAULTS.put(GerkeDecoder.O_SIGMA, "0.18");
+        DEFAULTS.put(GerkeDecoder.O_COHSIZE, "0.8");
+        DEFAULTS.put(GerkeDecoder.O_SEGSIZE, "3.0");
+        DEFAULTS.put(GerkeDecoder.O_DECODER, "7");
+        DEFAULTS.put(GerkeDecoder.O_LEVEL, "1.0");
+        DEFAULTS.put(GerkeDecoder.O_TEXT_FORMAT, "L,"+GerkeDecoder.LINE_LENGTH_DEFAULT);
+        DEFAULTS.put(GerkeDecoder.O_PLINT, "0,-1");
+        DEFAULTS.put(GerkeDecoder.O_HIST_TONE_SPACE, "-1");
+        DEFAULTS.put(GerkeDecoder.O_LATENCY, "10");
+        DEFAULTS.put(GerkeDecoder.O_RAW_FORMAT, "-1");
+
+        DEFAULTS.put(GerkeDecoder.O_HIDDEN,
+                 "0.002"+                   // dip removal
+                ",0.002"+                   // spike removal
+                ",1"+                       // break too long dashes
+                ",b"+                       // b: Butterworth, cI: Chebyshev I, w: sliding Window, n: No filter
+                ",2.0"+                     // frequency, relative to 1/TU
+                ",2"+                       // filter order
+                ",0"+                       // phase-locked: 0=off, 1=on
+                ",0.8"+                     // phase averaging, relative to TU
+                ",0.75"+                    // merge-dips limit
+                ",0.7"+                     // dip strength min
+                ",0.05"+                    // clipping depth
+                ",0.40"+                    // sliding line half-width .... maybe lower towards 0.30?
+                ",0.35"+                    // spike width max         .... maybe lower towards 0.30?
+                ",0.33"+                    // crack width max         .... maybe lower?
+
+                                            // Options used by the integrating decoder
+                ",0.88"+                    // alfaMin
+                ",1.16"+                    // alfaMax
+                ",0.02"+                    // alfaStep
+                ",0.22"+                    // dotStrengthLimit
+                ",0.29"+                    // dashStrengthLimit
+                ",1.12"+                    // twoDotsStrengthLimit
+                ",1.3"+                     // peaking
+                ",1.0"+                     // dotBaseline
+                ",1.0"+                     // dashBaseline
+
+                ",50"+                      // filter warm-up when sharded, in time constants
+                ",g"+                       // g: Gaussian kernel, r: Recursive Gaussian
+                ",0"                        // frequency tracking range, Hz; 0: off
+                );
+    }
+
+    /**
+     * Creates a configuration from the parsed command line.
+     */
+    public static DecoderConfig fromCommandLine() {
+        try {
+            return new DecoderConfig(GerkeLib.params);
+        }
+        catch (IllegalArgumentException e) {
+            new Death(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Creates a configuration from option values, keyed by the full option
+     * name. Options that are not present get their default value.
+     *
+     * @throws IllegalArgumentException if a value is malformed or out of range
+     */
+    public DecoderConfig(Map<String, String> values) {
+
+        this.values = new HashMap<String, String>(values);
+
+        this.offset = intValue(values, GerkeDecoder.O_OFFSET);
+        this.length = intValue(values, GerkeDecoder.O_LENGTH);
+
+        final String[] fRange = GerkeLib.splitMulti(value(values, GerkeDecoder.O_FRANGE));
+        if (fRange.length != 2) {
+            throw new IllegalArgumentException(
+                    String.format("expecting 2 suboptions, got: %d", fRange.length));
+        }
+        this.freqLow = Double.parseDouble(fRange[0]);
+        this.freqHigh = Double.parseDouble(fRange[1]);
+        this.freq = intValue(values, GerkeDecoder.O_FREQ);
+
+        this.wpm = doubleValue(values, GerkeDecoder.O_WPM);
+        this.spaceExp = doubleValue(values, GerkeDecoder.O_SPACE_EXP);
+        this.clipLevel = intValue(values, GerkeDecoder.O_CLIPPING);
+        this.tsStretch = doubleValue(values, GerkeDecoder.O_STIME);
+        this.sigma = doubleValue(values, GerkeDecoder.O_SIGMA);
+        this.cohSize = doubleValue(values, GerkeDecoder.O_COHSIZE);
+        this.segSize = doubleValue(values, GerkeDecoder.O_SEGSIZE);
+
+        this.decoder = intValue(values, GerkeDecoder.O_DECODER);
+        this.level = doubleValue(values, GerkeDecoder.O_LEVEL);
+
+        this.timestamps = flag(values, GerkeDecoder.O_TSTAMPS);
+
+        final String[] textFormat = GerkeLib.splitMulti(value(values, GerkeDecoder.O_TEXT_FORMAT));
+        if (textFormat.length > 2) {
+            throw new IllegalArgumentException(
+                    "Too many option values for option " + GerkeDecoder.O_TEXT_FORMAT);
+        }
+        this.textCase = textFormat[0];
+        if (!(textCase.equals("L") || textCase.equals("U") || textCase.equals("C"))) {
+            throw new IllegalArgumentException(
+                    "Expecting option value L, U or C for option " + GerkeDecoder.O_TEXT_FORMAT);
+        }
+        this.lineLength = GerkeLib.parseInt(
+                textFormat.length == 2 ? textFormat[1] : GerkeDecoder.LINE_LENGTH_DEFAULT);
+        if (lineLength == Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("Expecting numeric value for line length");
+        }
+        else if (lineLength < 1) {
+            throw new IllegalArgumentException("Value for line length is out of range");
+        }
+
+        final double[] plotInterval = GerkeLib.parseDoubleMulti(value(values, GerkeDecoder.O_PLINT));
+        if (plotInterval.length != 2) {
+            throw new IllegalArgumentException("bad plot interval: wrong number of suboptions");
+        }
+        this.plotBegin = plotInterval[0];
+        this.plotLength = plotInterval[1];
+        this.freqPlot = flag(values, GerkeDecoder.O_FPLOT);
+        this.ampPlot = flag(values, GerkeDecoder.O_APLOT);
+        this.phasePlot = flag(values, GerkeDecoder.O_PPLOT);
+        this.freqStabilityPlot = flag(values, GerkeDecoder.O_FSPLOT);
+
+        this.histRequests = GerkeLib.parseIntMulti(value(values, GerkeDecoder.O_HIST_TONE_SPACE));
+
+        this.latency = intValue(values, GerkeDecoder.O_LATENCY);
+
+        final String[] raw = GerkeLib.splitMulti(value(values, GerkeDecoder.O_RAW_FORMAT));
+        if (raw.length == 1 && GerkeLib.parseInt(raw[0]) == -1) {
+            this.rawRate = -1;
+            this.rawBits = -1;
+            this.rawChannels = -1;
+        }
+        else if (raw.length != 3) {
+            throw new IllegalArgumentException(
+                    "Expecting RATE,BITS,CHANNELS for option " + GerkeDecoder.O_RAW_FORMAT);
+        }
+        else {
+            this.rawRate = GerkeLib.parseInt(raw[0]);
+            this.rawBits = GerkeLib.parseInt(raw[1]);
+            this.rawChannels = GerkeLib.parseInt(raw[2]);
+            if (rawRate <= 0 || rawBits <= 0 || rawBits % 8 != 0 || rawChannels <= 0) {
+                throw new IllegalArgumentException(
+                        "Bad RATE,BITS,CHANNELS for option " + GerkeDecoder.O_RAW_FORMAT);
+            }
+        }
+
+        // hidden values that are not given fall back to the defaults
+        final String[] given = GerkeLib.splitMulti(value(values, GerkeDecoder.O_HIDDEN));
+        this.hidden = GerkeLib.splitMulti(DEFAULTS.get(GerkeDecoder.O_HIDDEN));
+        for (int k = 0; k < given.length && k < hidden.length; k++) {
+            hidden[k] = given[k];
+        }
+        final String joined = String.join(",", hidden);
+        this.hiddenDouble = GerkeLib.parseDoubleMulti(joined);
+        this.hiddenInt = GerkeLib.parseIntMulti(joined);
+    }
+
+    /**
+     * Returns a configuration where the given option has the given value,
+     * and other options are as in this one.
+     */
+    public DecoderConfig with(String key, String value) {
+        final Map<String, String> newValues = new HashMap<String, String>(values);
+        newValues.put(key, value);
+        return new DecoderConfig(newValues);
+    }
+
+    /**
+     * The value used for an option that is not given, or null for a flag.
+     */
+    public static String defaultValue(String key) {
+        return DEFAULTS.get(key);
+    }
+
+    private static String value(Map<String, String> values, String key) {
+        final String value = values.get(key);
+        return value != null ? value : DEFAULTS.get(key);
+    }
+
+    private static int intValue(Map<String, String> values, String key) {
+        final String value = value(values, key);
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    String.format("expecting integer value for option %s, got: %s", key, value), e);
+        }
+    }
+
+    private static double doubleValue(Map<String, String> values, String key) {
+        final String value = value(values, key);
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    String.format("expecting numeric value for option %s, got: %s", key, value), e);
+        }
+    }
+
+    private static boolean flag(Map<String, String> values, String key) {
+        return "true".equals(value(values, key));
+    }
+
+    public String getHidden(HiddenOpts h) {
+        return hidden[h.ordinal()];
+    }
+
+    public double getHiddenDouble(HiddenOpts h) {
+        return hiddenDouble[h.ordinal()];
+    }
+
+    public int getHiddenInt(HiddenOpts h) {
+        return hiddenInt[h.ordinal()];
+    }
+
+    /**
+     * Histogram modes are 1 (tone lengths) and 0 (space lengths).
+     */
+    public boolean histogramRequested(int mode) {
+        return GerkeLib.member(mode, histRequests);
+    }
+
+    /**
+     * True if the -M option was given.
+     */
+    public boolean hasHistogramOption() {
+        return !(histRequests.length == 1 && histRequests[0] == -1);
+    }
+
+    public boolean validHistogramModes() {
+        return GerkeLib.validBoundaries(0, 1, histRequests);
+    }
+
+    /**
+     * True if any kind of plot was requested.
+     */
+    public boolean hasPlots() {
+        return freqPlot || ampPlot || phasePlot || freqStabilityPlot || hasHistogramOption();
+    }
+}
@@ -65,12 +65,12 @@ public final class GerkeDecoder {
     public static final String O_LENGTH = "length";
     public static final String O_FRANGE = "freq-range";
     public static final String O_FREQ = "freq";
-    static final String O_WPM = "wpm";
+    public static final String O_WPM = "wpm";
     public static final String O_SPACE_EXP = "space-expansion";
     public static final String O_CLIPPING = "clip";
-    static final String O_STIME = "sample-time";
+    public static final String O_STIME = "sample-time";
     public static final String O_SIGMA = "sigma";
-    static final String O_DECODER = "decoder";
+    public static final String O_DECODER = "decoder";
     public static final String O_LEVEL = "level";
     public static final String O_TSTAMPS = "timestamps";
     public static final String O_TEXT_FORMAT = "text-format";
@@ -88,6 +88,10 @@ public final class GerkeDecoder {
     public static final String O_COHSIZE = "coherence-size";
     public static final String O_SEGSIZE = "segment-size";
 
+    public static final String O_RAW_FORMAT = "raw-format";
+    public static final String O_LATENCY = "latency";
+    static final String O_BATCH = "batch";
+
     public static final String O_HIDDEN = "hidden-options";
     public enum HiddenOpts {
         DIP,
@@ -112,7 +116,10 @@ public final class GerkeDecoder {
         TWO_DOTS_LIMIT,
         PEAKING,
         DOT_BASELINE,
-        DASH_BASELINE
+        DASH_BASELINE,
+        FILTER_WARMUP,
+        SMOOTHER,
+        TRACK_RANGE
     };
 
     static final String[] DECODER_NAME = new String[] {"",
@@ -270,73 +277,53 @@ public final class GerkeDecoder {
          */
         new VersionOption("V", O_VERSION, "gerke-decoder version 3.2.10");
 
-        new SingleValueOption("o", O_OFFSET, "0");
-        new SingleValueOption("l", O_LENGTH, "-1");
+        new SingleValueOption("o", O_OFFSET, DecoderConfig.defaultValue(O_OFFSET));
+        new SingleValueOption("l", O_LENGTH, DecoderConfig.defaultValue(O_LENGTH));
 
-        new SingleValueOption("F", O_FRANGE, "400,1200");
-        new SingleValueOption("f", O_FREQ, "-1");
+        new SingleValueOption("F", O_FRANGE, DecoderConfig.defaultValue(O_FRANGE));
+        new SingleValueOption("f", O_FREQ, DecoderConfig.defaultValue(O_FREQ));
 
-        new SingleValueOption("w", O_WPM, "15.0");
-        new SingleValueOption("W", O_SPACE_EXP, "1.0");
+        new SingleValueOption("w", O_WPM, DecoderConfig.defaultValue(O_WPM));
+        new SingleValueOption("W", O_SPACE_EXP, DecoderConfig.defaultValue(O_SPACE_EXP));
 
-        new SingleValueOption("c", O_CLIPPING, "-1");
-        new SingleValueOption("q", O_STIME, "1.0");
-        new SingleValueOption("s", O_SIGMA, "0.18");
+        new SingleValueOption("c", O_CLIPPING, DecoderConfig.defaultValue(O_CLIPPING));
+        new SingleValueOption("q", O_STIME, DecoderConfig.defaultValue(O_STIME));
+        new SingleValueOption("s", O_SIGMA, DecoderConfig.defaultValue(O_SIGMA));
 
-        new SingleValueOption("C", O_COHSIZE, "0.8");
-        new SingleValueOption("G", O_SEGSIZE, "3.0");
+        new SingleValueOption("C", O_COHSIZE, DecoderConfig.defaultValue(O_COHSIZE));
+        new SingleValueOption("G", O_SEGSIZE, DecoderConfig.defaultValue(O_SEGSIZE));
 
-        new SingleValueOption("D", O_DECODER, "7");
+        new SingleValueOption("D", O_DECODER, DecoderConfig.defaultValue(O_DECODER));
 
-        new SingleValueOption("u", O_LEVEL, "1.0");
+        new SingleValueOption("u", O_LEVEL, DecoderConfig.defaultValue(O_LEVEL));
 
         new Flag("t", O_TSTAMPS);
-        new SingleValueOption("T", O_TEXT_FORMAT, "L,"+LINE_LENGTH_DEFAULT);
+        new SingleValueOption("T", O_TEXT_FORMAT, DecoderConfig.defaultValue(O_TEXT_FORMAT));
 
         new Flag("S", O_FPLOT);
 
-        new SingleValueOption("Z", O_PLINT, "0,-1");
+        new SingleValueOption("Z", O_PLINT, DecoderConfig.defaultValue(O_PLINT));
         new Flag("A", O_APLOT);
         new Flag("P", O_PPLOT);
 
         new Flag("Y", O_FSPLOT);
 
-        new SingleValueOption("M", O_HIST_TONE_SPACE, "-1");
+        new SingleValueOption("M", O_HIST_TONE_SPACE, DecoderConfig.defaultValue(O_HIST_TONE_SPACE));
 
         new SteppingOption("v", O_VERBOSE);
 
-        new SingleValueOption("H", O_HIDDEN,
-                         "0.002"+                   // dip removal
-                        ",0.002"+                   // spike removal
-                        ",1"+                       // break too long dashes
-                        ",b"+                       // b: Butterworth, cI: Chebyshev I, w: sliding Window, n: No filter
-                        ",2.0"+                     // frequency, relative to 1/TU
-                        ",2"+                       // filter order
-                        ",0"+                       // phase-locked: 0=off, 1=on
-                        ",0.8"+                     // phase averaging, relative to TU
-                        ",0.75"+                    // merge-dips limit
-                        ",0.7"+                     // dip strength min
-                        ",0.05"+                    // clipping depth
-                        ",0.40"+                    // sliding line half-width .... maybe lower towards 0.30?
-                        ",0.35"+                    // spike width max         .... maybe lower towards 0.30?
-                        ",0.33"+                    // crack width max         .... maybe lower?
-                        
-                                                    // Options used by the integrating decoder
-                        ",0.88"+                    // alfaMin
-                        ",1.16"+                    // alfaMax
-                        ",0.02"+                    // alfaStep
-                        ",0.22"+                    // dotStrengthLimit
-                        ",0.29"+                    // dashStrengthLimit
-                        ",1.12"+                    // twoDotsStrengthLimit
-                        ",1.3"+                     // peaking
-                        ",1.0"+                     // dotBaseline
-                        ",1.0"                      // dashBaseline
-                );
+        new SingleValueOption("R", O_RAW_FORMAT, DecoderConfig.defaultValue(O_RAW_FORMAT));
+        new SingleValueOption("L", O_LATENCY, DecoderConfig.defaultValue(O_LATENCY));
+        new SingleValueOption("B", O_BATCH, "0");
+
+        new SingleValueOption("H", O_HIDDEN, DecoderConfig.defaultValue(O_HIDDEN));
 
         new HelpOption(
                 "h",
 new String[]{
         "Usage is: bin/gerke-decoder [OPTIONS] WAVEFILE",
+        "      or: bin/gerke-decoder [OPTIONS] -",
+        "      or: bin/gerke-decoder [OPTIONS] -B THREADS FILE|DIRECTORY|@LISTFILE ...",
         "Options are:",
         String.format("  -o OFFSET          Offset (seconds)"),
         String.format("  -l LENGTH          Length (seconds)"),
@@ -367,6 +354,9 @@ new String[]{
         String.format("  -Z START,LENGTH    Time interval for signal and phase plot (seconds)"),
         String.format("  -t                 Insert timestamps in decoded text"),
         String.format("  -T CASE[,LENGTH]   Decoded text case (L/U/C) and line length (optional)"),
+        String.format("  -R RATE,BITS,CH    Raw signed little-endian PCM on standard input"),
+        String.format("  -L LATENCY         Output delay when decoding standard input, default: %s s", GerkeLib.getDefault(O_LATENCY)),
+        String.format("  -B THREADS         Batch mode, decode files on this many threads"),
         String.format("  -v                 Verbosity (may be given several times)"),
         String.format("  -V                 Show version"),
         String.format("  -h                 This help"),
@@ -402,7 +392,16 @@ new String[]{
         "greater than 1.0 for EXPANSION.",
         "",
         "The SIGMA parameter defines the width, given in TU units, of the Gaussian",
-        "used in computing a smoothed signal value."
+        "used in computing a smoothed signal value.",
+        "",
+        "If the file is given as -, audio is read from standard input, either as a",
+        "WAV stream or, if -R is given, as raw PCM. The stream is decoded in",
+        "overlapping windows, and text is written within LATENCY seconds.",
+        "",
+        "In batch mode the text decoded from each file X is written to X.txt, and",
+        "a summary table is written to standard output. A directory",
+        "argument stands for the .wav and .mp3 files in it, and @LISTFILE for the",
+        "files listed in LISTFILE, one per line."
                 });
     }
 
@@ -447,461 +446,500 @@ new String[]{
             GerkeLib.parseArgs(clArgs);
             showClData();
 
-            // ===================================== Wave file
+            final DecoderConfig cfg = DecoderConfig.fromCommandLine();
 
-            final Wav w = new Wav();
+            if (GerkeLib.getIntOpt(O_BATCH) > 0) {
+                final int nofFailed = new BatchDecoder(cfg, GerkeLib.getIntOpt(O_BATCH)).run();
+                if (nofFailed > 0) {
+                    new Death("failed to decode files: %d", nofFailed);
+                }
+                return;
+            }
 
-            // ===================================== TU and time slice
+            final Formatter formatter = new Formatter(cfg);
 
-            final double wpm = GerkeLib.getDoubleOpt(O_WPM);
-            final double tuMillis = 1200/wpm;
-            new Info("dot time, tentative: %.3f ms", tuMillis);
+            if (GerkeLib.nofArguments() == 1 && GerkeLib.getArgument(0).equals("-")) {
+                new StreamDecoder(cfg, formatter).run();
+            }
+            else {
+                decode(cfg, new Wav(Wav.fileArgument(), cfg.offset, cfg.length), formatter, cfg.offset);
+            }
 
-            // tsLength is the relative TS length.
-            // 0.10 is a typical value.
-            // TS length in ms is: tsLength*tuMillis
-            // Number of TU covered by N time slices is N/(1.0/tsLength) = N*tsLength
+            new Info("decoded text MD5 digest: %s", formatter.getDigest());
+        }
+        catch (Exception e) {
+            new Death(e);
+        }
 
-            final int decoder = GerkeLib.getIntOpt(O_DECODER);
+        if (CollectorBase.windowsPlotCount > 0) {
+            GerkeLib.prompt("push Enter to exit this program: ");
+        }
+    }
 
-            final double tsStretch = GerkeLib.getDoubleOpt(O_STIME);
-            final double tsLengthGiven = tsStretch*TS_LENGTH[decoder];
+    /**
+     * Nof. frames per time slice, for the decoder and the time slice
+     * stretch given by the configuration.
+     */
+    static int framesPerSlice(DecoderConfig cfg, int frameRate) {
+        final double tuMillis = 1200/cfg.wpm;
+        final double tsLengthGiven = cfg.tsStretch*TS_LENGTH[cfg.decoder];
+        return (int) Math.round(tsLengthGiven*frameRate*tuMillis/1000.0);
+    }
 
-            final int framesPerSlice = (int) Math.round(tsLengthGiven*w.frameRate*tuMillis/1000.0);
+    /**
+     * Decode the given samples and write the text to the formatter.
+     *
+     * @param offset     start of the samples, in seconds, for timestamps
+     */
+    static void decode(DecoderConfig cfg, Wav w, Formatter formatter, int offset) throws Exception {
 
-            final double tsLength = 1000.0*framesPerSlice/(w.frameRate*tuMillis);
+        // ===================================== TU and time slice
 
-            new Info("time slice: %.3f ms", 1000.0*framesPerSlice/w.frameRate);
-            new Info("frames per time slice: %d", framesPerSlice);
-            new Debug("time slice roundoff: %e", (tsLength - tsLengthGiven)/tsLengthGiven);
+        final double wpm = cfg.wpm;
+        final double tuMillis = 1200/wpm;
+        new Info("dot time, tentative: %.3f ms", tuMillis);
 
-            new Info("sigma: %f", GerkeLib.getDoubleOpt(O_SIGMA));
+        // tsLength is the relative TS length.
+        // 0.10 is a typical value.
+        // TS length in ms is: tsLength*tuMillis
+        // Number of TU covered by N time slices is N/(1.0/tsLength) = N*tsLength
 
+        final int decoder = cfg.decoder;
 
-            // ============  Multiply by sine and cosine functions, apply filtering
+        final double tsStretch = cfg.tsStretch;
+        final double tsLengthGiven = tsStretch*TS_LENGTH[decoder];
 
-            // number of slices; this many slices fill the wav array, except for a
-            // possible tail that is less than a complete slice
-            final int nofSlices = w.nofFrames/framesPerSlice;
+        final int framesPerSlice = framesPerSlice(cfg, w.frameRate);
 
-            final int fSpecified = GerkeLib.getIntOpt(GerkeDecoder.O_FREQ);
+        final double tsLength = 1000.0*framesPerSlice/(w.frameRate*tuMillis);
 
+        new Info("time slice: %.3f ms", 1000.0*framesPerSlice/w.frameRate);
+        new Info("frames per time slice: %d", framesPerSlice);
+        new Debug("time slice roundoff: %e", (tsLength - tsLengthGiven)/tsLengthGiven);
 
+        new Info("sigma: %f", cfg.sigma);
 
-            final CwDetector detector;
 
-            final double decoderThreshold = getThreshold(decoder);
+        // ============  Multiply by sine and cosine functions, apply filtering
 
-            if (DecoderBase.getDetector(decoder) == DetectorIndex.ADAPTIVE_DETECTOR) {
+        // number of slices; this many slices fill the wav array, except for a
+        // possible tail that is less than a complete slice
+        if (w.nofFrames/framesPerSlice > Integer.MAX_VALUE) {
+            new Death("recording too long for time resolution, use -l or -o to select a part");
+        }
+        final int nofSlices = (int) (w.nofFrames/framesPerSlice);
 
-                // warn if specified frequency .. not expected by this detector
+        final int fSpecified = cfg.freq;
 
-                final double cohSizeGiven = GerkeLib.getDoubleOpt(O_COHSIZE);
-                final int cohFactor = (int) Math.round(cohSizeGiven/tsLength);
-                final int segFactor = (int) Math.round(
-                        GerkeLib.getDoubleOpt(O_SEGSIZE)*w.frameRate/
-                        (cohFactor*framesPerSlice));
 
-                detector = new CwAdaptiveImpl(
-                        nofSlices,
-                        w,
-                        tuMillis,
-                        framesPerSlice,
 
-                        // TODO, parameter, 4 or 5 seems a reasonable value
-                        cohFactor,
+        final CwDetector detector;
 
-                        // TODO, parameter, unclear if it is very critical
-                        segFactor,
-                        // while trying out, let the product of the two be about 500
+        final double decoderThreshold = getThreshold(decoder);
 
-                        tsLength
-                        );
-            }
-            else if (DecoderBase.getDetector(decoder) == DetectorIndex.BASIC_DETECTOR) {
-                detector = new CwBasicImpl(
-                        decoder,
-                        decoderThreshold,
-                        nofSlices,
-                        w,
-                        tuMillis,
-                        framesPerSlice,
-                        tsLength,
-                        fSpecified
-                        );
-            }
-            else {
-                throw new RuntimeException();
-            }
+        if (DecoderBase.getDetector(decoder) == DetectorIndex.ADAPTIVE_DETECTOR) {
 
+            // warn if specified frequency .. not expected by this detector
 
+            final double cohSizeGiven = cfg.cohSize;
+            final int cohFactor = (int) Math.round(cohSizeGiven/tsLength);
+            final int segFactor = (int) Math.round(
+                    cfg.segSize*w.frameRate/
+                    (cohFactor*framesPerSlice));
 
-            final Signal signal = detector.getSignal();
-            final double[] sig = signal.sig;
-            final int sigSize = signal.sig.length;
+            detector = new CwAdaptiveImpl(
+                    cfg,
+                    nofSlices,
+                    w,
+                    tuMillis,
+                    framesPerSlice,
 
-            if (detector instanceof CwAdaptiveImpl) {
-                // diagnostic only
-                ((CwAdaptiveImpl)detector).trigTableReport();
-            }
+                    // TODO, parameter, 4 or 5 seems a reasonable value
+                    cohFactor,
 
-            if (GerkeLib.getFlag(O_FSPLOT)) {
-                detector.frequencyStabilityPlot();
-            }
+                    // TODO, parameter, unclear if it is very critical
+                    segFactor,
+                    // while trying out, let the product of the two be about 500
 
-            if (sigSize != nofSlices) {
-                // unexpected ...
-                new Info("sigSize: %d, nofSlices: %d", sigSize, nofSlices);
-            }
+                    tsLength
+                    );
+        }
+        else if (DecoderBase.getDetector(decoder) == DetectorIndex.BASIC_DETECTOR) {
+            detector = new CwBasicImpl(
+                    cfg,
+                    decoder,
+                    decoderThreshold,
+                    nofSlices,
+                    w,
+                    tuMillis,
+                    framesPerSlice,
+                    tsLength,
+                    fSpecified
+                    );
+        }
+        else {
+            throw new RuntimeException();
+        }
 
-            // ================= Determine floor and ceiling. These arrays are used for
-            // decoding and plotting as well.
 
-            final int estBaseCeil = Compute.ensureEven((int)(P_CEIL_HIST_WIDTH*(tuMillis/1000.0)*w.frameRate/framesPerSlice));
-            new Debug("ceiling estimation based on slices: %d", estBaseCeil);
 
-            final int estBaseFloor = Compute.ensureEven((int)(P_FLOOR_HIST_WIDTH*(tuMillis/1000.0)*w.frameRate/framesPerSlice));
-            new Debug("floor estimation based on slices: %d", estBaseFloor);
+        final Signal signal = detector.getSignal();
+        final double[] sig = signal.sig;
+        final int sigSize = signal.sig.length;
 
-            final double[] cei = new double[sig.length];
-            final double[] flo = new double[sig.length];
+        if (detector instanceof CwAdaptiveImpl) {
+            // diagnostic only
+            ((CwAdaptiveImpl)detector).trigTableReport();
+        }
 
-            double ceilingMax = -1.0;
-            for (int q = 0; true; q++) {
-                if (w.wav.length - q*framesPerSlice < framesPerSlice) {
-                    break;
-                }
+        if (cfg.freqStabilityPlot) {
+            detector.frequencyStabilityPlot();
+        }
+
+        if (sigSize != nofSlices) {
+            // unexpected ...
+            new Info("sigSize: %d, nofSlices: %d", sigSize, nofSlices);
+        }
+
+        // ================= Determine floor and ceiling. These arrays are used for
+        // decoding and plotting as well.
+
+        final int estBaseCeil = Compute.ensureEven((int)(P_CEIL_HIST_WIDTH*(tuMillis/1000.0)*w.frameRate/framesPerSlice));
+        new Debug("ceiling estimation based on slices: %d", estBaseCeil);
+
+        final int estBaseFloor = Compute.ensureEven((int)(P_FLOOR_HIST_WIDTH*(tuMillis/1000.0)*w.frameRate/framesPerSlice));
+        new Debug("floor estimation based on slices: %d", estBaseFloor);
+
+        final double[] cei = new double[sig.length];
+        final double[] flo = new double[sig.length];
 
-                flo[q] = localFloorByHist(q, sig, estBaseFloor, tsLength);
-                cei[q] = localCeilByHist(q, sig, estBaseCeil, tsLength);
-                ceilingMax = Compute.dMax(ceilingMax, cei[q]);
+        double ceilingMax = -1.0;
+        for (int q = 0; true; q++) {
+            if (w.nofFrames - (long) q*framesPerSlice < framesPerSlice) {
+                break;
             }
 
-            // some of this is used by the phase plot
+            flo[q] = localFloorByHist(q, sig, estBaseFloor, tsLength);
+            cei[q] = localCeilByHist(q, sig, estBaseCeil, tsLength);
+            ceilingMax = Compute.dMax(ceilingMax, cei[q]);
+        }
+
+        // some of this is used by the phase plot
 
-            final int dashLimit = (int) Math.round(DASH_LIMIT[decoder]*tuMillis*w.frameRate/(1000*framesPerSlice));        // PARAMETER
-            final int wordSpaceLimit = (int) Math.round(WORD_SPACE_LIMIT[decoder]*tuMillis*w.frameRate/(1000*framesPerSlice));   // PARAMETER
+        final int dashLimit = (int) Math.round(DASH_LIMIT[decoder]*tuMillis*w.frameRate/(1000*framesPerSlice));        // PARAMETER
+        final int wordSpaceLimit = (int) Math.round(WORD_SPACE_LIMIT[decoder]*tuMillis*w.frameRate/(1000*framesPerSlice));   // PARAMETER
 //            final int charSpaceLimit = (int) Math.round(CHAR_SPACE_LIMIT[decoder]*tuMillis*w.frameRate/(1000*framesPerSlice));   // PARAMETER
 //            final int twoDashLimit = (int) Math.round(TWO_DASH_LIMIT*tuMillis*w.frameRate/(1000*framesPerSlice));     // PARAMETER
-            final double level = GerkeLib.getDoubleOpt(O_LEVEL);
+        final double level = cfg.level;
 
-            new Info("relative tone/silence threshold: %.3f", level);
-            new Debug("dash limit: %d, word space limit: %d", dashLimit, wordSpaceLimit);
+        new Info("relative tone/silence threshold: %.3f", level);
+        new Debug("dash limit: %d, word space limit: %d", dashLimit, wordSpaceLimit);
 
-            // ================ Phase plot, optional
+        // ================ Phase plot, optional
 
-            if (GerkeLib.getFlag(O_PPLOT)) {
+        if (cfg.phasePlot) {
 
-                detector.phasePlot(
-                        sig,
-                        level,
-                        flo,
-                        cei);
-            }
+            detector.phasePlot(
+                    sig,
+                    level,
+                    flo,
+                    cei);
+        }
 
-            final int offset = GerkeLib.getIntOpt(O_OFFSET);
-            final Formatter formatter = new Formatter();
-            final PlotEntries plotEntries =
-                    GerkeLib.getFlag(O_APLOT) ? new PlotEntries(w) : null;
-
-            if (plotEntries != null) {
-                for (int q = 0; q < sig.length; q++) {
-                    final double seconds = w.secondsFromSliceIndex(q, framesPerSlice);
-                    if (plotEntries.plotBegin <= seconds && seconds <= plotEntries.plotEnd) {
-                        final double threshold = detector.threshold(level, flo[q], cei[q], decoder);
-                        plotEntries.addAmplitudes(seconds, sig[q], threshold, cei[q], flo[q]);
-                    }
+        final PlotEntries plotEntries =
+                cfg.ampPlot ? new PlotEntries(w, cfg) : null;
+
+        if (plotEntries != null) {
+            for (int q = 0; q < sig.length; q++) {
+                final double seconds = w.secondsFromSliceIndex(q, framesPerSlice);
+                if (plotEntries.plotBegin <= seconds && seconds <= plotEntries.plotEnd) {
+                    final double threshold = detector.threshold(level, flo[q], cei[q], decoder);
+                    plotEntries.addAmplitudes(seconds, sig[q], threshold, cei[q], flo[q]);
                 }
             }
+        }
 
-            /**
-             * The array may contain 1 (tones histogram) or 0 (spaces histogram) or both,
-             * or -1 denoting "undefined".
-             */
-            final int[] histRequests = GerkeLib.getIntOptMulti(O_HIST_TONE_SPACE);
-            if (histRequests.length == 1 && histRequests[0] == -1) {
-                // nothing requested
-            }
-            else if (histRequests.length > 0 && decoder != DecoderIndex.LSQ2_PLUS.ordinal()) {
-                new Death("Option -%s only supported for -%s %d",
-                        GerkeLib.getOptShortName(O_HIST_TONE_SPACE),
-                        GerkeLib.getOptShortName(O_DECODER),
-                        DecoderIndex.LSQ2_PLUS.ordinal());
-            }
+        /**
+         * The array may contain 1 (tones histogram) or 0 (spaces histogram) or both,
+         * or -1 denoting "undefined".
+         */
+        if (!cfg.hasHistogramOption()) {
+            // nothing requested
+        }
+        else if (decoder != DecoderIndex.LSQ2_PLUS.ordinal()) {
+            new Death("Option -%s only supported for -%s %d",
+                    GerkeLib.getOptShortName(O_HIST_TONE_SPACE),
+                    GerkeLib.getOptShortName(O_DECODER),
+                    DecoderIndex.LSQ2_PLUS.ordinal());
+        }
 
-            final HistEntries histEntries;
-            if (GerkeLib.member(1, histRequests) ||
-                    GerkeLib.member(0, histRequests)) { // move method to GerkeLib? TODO
-                if (! GerkeLib.validBoundaries(0, 1, histRequests)) {
-                    new Death("Option -%s values must be 0 or 1",
-                            GerkeLib.getOptShortName(O_HIST_TONE_SPACE));
-                }
-                histEntries = new HistEntries(tuMillis, tsLength);
-            }
-            else {
-                histEntries = null;
+        final HistEntries histEntries;
+        if (cfg.histogramRequested(1) ||
+                cfg.histogramRequested(0)) {
+            if (! cfg.validHistogramModes()) {
+                new Death("Option -%s values must be 0 or 1",
+                        GerkeLib.getOptShortName(O_HIST_TONE_SPACE));
             }
+            histEntries = new HistEntries(tuMillis, tsLength);
+        }
+        else {
+            histEntries = null;
+        }
 
-            new Info("decoder: %s (%d)", DECODER_NAME[decoder], decoder);
-            final Decoder dec;
-            if (decoder == DecoderIndex.TONE_SILENCE.ordinal()) {
-                dec = new ToneSilenceDecoder(
-                        tuMillis,
-                        framesPerSlice,
-                        tsLength,
-                        offset,
-                        w,
-                        sig,
-                        plotEntries,
-                        formatter,
+        new Info("decoder: %s (%d)", DECODER_NAME[decoder], decoder);
+        final Decoder dec;
+        if (decoder == DecoderIndex.TONE_SILENCE.ordinal()) {
+            dec = new ToneSilenceDecoder(
+                    cfg,
+                    tuMillis,
+                    framesPerSlice,
+                    tsLength,
+                    offset,
+                    w,
+                    sig,
+                    plotEntries,
+                    formatter,
 
 //                        trans,
 //                        transIndex,
-                        ceilingMax,
+                    ceilingMax,
 
-                        nofSlices,
-                        level,
-                        cei,
-                        flo
+                    nofSlices,
+                    level,
+                    cei,
+                    flo
 
-                        );
+                    );
 
-            }
-
-            else if (decoder == DecoderIndex.PATTERN_MATCHING.ordinal()) {
-                dec = new PatternMatchDecoder(
-
-                        tuMillis,
-                        framesPerSlice,
-                        tsLength,
-                        offset,
-                        w,
-                        sig,
-                        plotEntries,
-                        formatter,
+        }
 
-                        ceilingMax,
+        else if (decoder == DecoderIndex.PATTERN_MATCHING.ordinal()) {
+            dec = new PatternMatchDecoder(
+                    cfg,
+                    tuMillis,
+                    framesPerSlice,
+                    tsLength,
+                    offset,
+                    w,
+                    sig,
+                    plotEntries,
+                    formatter,
+
+                    ceilingMax,
 //                        trans,
 //                        transIndex,
-                        level,
+                    level,
 
-                        nofSlices,
-                        cei,
-                        flo);
-            }
+                    nofSlices,
+                    cei,
+                    flo);
+        }
 
-            else if (decoder == DecoderIndex.DIPS_FINDING.ordinal()) {
-                dec = new DipsFindingDecoder(
-                        tuMillis,
-                        framesPerSlice,
-                        tsLength,
-                        offset,
-                        w,
-                        sig,
-                        plotEntries,
-                        formatter,
-
-                        ceilingMax,
+        else if (decoder == DecoderIndex.DIPS_FINDING.ordinal()) {
+            dec = new DipsFindingDecoder(
+                    cfg,
+                    tuMillis,
+                    framesPerSlice,
+                    tsLength,
+                    offset,
+                    w,
+                    sig,
+                    plotEntries,
+                    formatter,
+
+                    ceilingMax,
 //                        trans,
 //                        transIndex,
-                        cei,
-                        flo,
-                        nofSlices,
-                        level
-                        );
-            }
-
-            else if (decoder == DecoderIndex.LEAST_SQUARES.ordinal()) {
-                dec = new LeastSquaresDecoder(
-
-                        tuMillis,
-                        framesPerSlice,
-                        tsLength,
-                        offset,
-                        w,
-                        sig,
-                        plotEntries,
-                        formatter,
-
-                        sigSize,
-                        cei,
-                        flo,
-                        ceilingMax
+                    cei,
+                    flo,
+                    nofSlices,
+                    level
+                    );
+        }
 
-                        );
-            }
-            else if (decoder == DecoderIndex.LSQ2.ordinal()) {
-                dec = new SlidingLineDecoder(
-                        tuMillis,
-                        framesPerSlice,
-                        tsLength,
-                        offset,
-                        w,
-                        sig,
-                        plotEntries,
-                        formatter,
-
-                        sigSize,
-                        cei,
-                        flo,
-                        level,
-                        ceilingMax
-
-                        );
-            }
-            else if (decoder == DecoderIndex.LSQ2_PLUS.ordinal()) {
-                dec = new SlidingLinePlus(
-                        tuMillis,
-                        framesPerSlice,
-                        tsLength,
-                        offset,
-                        w,
-                        sig,
-                        plotEntries,
-                        histEntries,
-                        formatter,
-
-                        sigSize,
-                        cei,
-                        flo,
-                        level,
-                        ceilingMax
-
-                        );
-            }
-            else if (decoder == DecoderIndex.INTEGRATING.ordinal()) {
-                dec = new IntegratingDecoder(
-                        tuMillis,
-                        framesPerSlice,
-                        tsLength,
-                        offset,
-                        w,
-                        sig,
-                        plotEntries,
-                        histEntries,
-                        formatter,
-
-                        sigSize,
-                        cei,
-                        flo,
-                        level,
-                        ceilingMax
-
-                        );
+        else if (decoder == DecoderIndex.LEAST_SQUARES.ordinal()) {
+            dec = new LeastSquaresDecoder(
+                    cfg,
+                    tuMillis,
+                    framesPerSlice,
+                    tsLength,
+                    offset,
+                    w,
+                    sig,
+                    plotEntries,
+                    formatter,
+
+                    sigSize,
+                    cei,
+                    flo,
+                    ceilingMax
+
+                    );
+        }
+        else if (decoder == DecoderIndex.LSQ2.ordinal()) {
+            dec = new SlidingLineDecoder(
+                    cfg,
+                    tuMillis,
+                    framesPerSlice,
+                    tsLength,
+                    offset,
+                    w,
+                    sig,
+                    plotEntries,
+                    formatter,
+
+                    sigSize,
+                    cei,
+                    flo,
+                    level,
+                    ceilingMax
+
+                    );
+        }
+        else if (decoder == DecoderIndex.LSQ2_PLUS.ordinal()) {
+            dec = new SlidingLinePlus(
+                    cfg,
+                    tuMillis,
+                    framesPerSlice,
+                    tsLength,
+                    offset,
+                    w,
+                    sig,
+                    plotEntries,
+                    histEntries,
+                    formatter,
+
+                    sigSize,
+                    cei,
+                    flo,
+                    level,
+                    ceilingMax
+
+                    );
+        }
+        else if (decoder == DecoderIndex.INTEGRATING.ordinal()) {
+            dec = new IntegratingDecoder(
+                    cfg,
+                    tuMillis,
+                    framesPerSlice,
+                    tsLength,
+                    offset,
+                    w,
+                    sig,
+                    plotEntries,
+                    histEntries,
+                    formatter,
+
+                    sigSize,
+                    cei,
+                    flo,
+                    level,
+                    ceilingMax
+
+                    );
+        }
+        else {
+            dec = null;
+            new Death("no such decoder: '%d'", decoder);
+        }
+        dec.execute();
+
+        if (cfg.histogramRequested(1)) {
+            final HistCollector hc =
+                    new HistCollector(
+                            histEntries.binWidth,
+                            histEntries.getVerticalRange(1),
+                            histEntries.getHorisontalRange(1));
+            for (Double d : histEntries.widthsOfTones) {
+                hc.ps.println(String.format("%f", d));
             }
-            else {
-                dec = null;
-                new Death("no such decoder: '%d'", decoder);
+            hc.plot(1);
+        }
+
+        if (cfg.histogramRequested(0)) {
+            final HistCollector hc =
+                    new HistCollector(
+                            histEntries.binWidth,
+                            histEntries.getVerticalRange(0),
+                            histEntries.getHorisontalRange(0));
+            for (Double d : histEntries.widthsOfSpaces) {
+                hc.ps.println(String.format("%f", d));
             }
-            dec.execute();
+            hc.plot(0);
+        }
 
-            new Info("decoded text MD5 digest: %s", formatter.getDigest());
+        if (plotEntries != null) {
+            final PlotCollector pc = new PlotCollector();
+            double initDigitizedSignal = -1.0;
+            double signa = 0.0;
+            double thresha = 0.0;
+            double ceiling = 0.0;
+            double floor = 0.0;
+            double sigavg = 0.0;
+            double digitizedSignal = initDigitizedSignal;
 
-            if (GerkeLib.member(1, histRequests)) {
-                final HistCollector hc =
-                        new HistCollector(
-                                histEntries.binWidth,
-                                histEntries.getVerticalRange(1),
-                                histEntries.getHorisontalRange(1));
-                for (Double d : histEntries.widthsOfTones) {
-                    hc.ps.println(String.format("%f", d));
-                }
-                hc.plot(1);
-            }
+            final boolean hasSigPlus = plotEntries.hasSigPlus();
 
-            if (GerkeLib.member(0, histRequests)) {
-                final HistCollector hc =
-                        new HistCollector(
-                                histEntries.binWidth,
-                                histEntries.getVerticalRange(0),
-                                histEntries.getHorisontalRange(0));
-                for (Double d : histEntries.widthsOfSpaces) {
-                    hc.ps.println(String.format("%f", d));
-                }
-                hc.plot(0);
-            }
+            for (Entry<Double, List<PlotEntryBase>> e : plotEntries.entries.entrySet()) {
 
-            if (plotEntries != null) {
-                final PlotCollector pc = new PlotCollector();
-                double initDigitizedSignal = -1.0;
-                double signa = 0.0;
-                double thresha = 0.0;
-                double ceiling = 0.0;
-                double floor = 0.0;
-                double sigavg = 0.0;
-                double digitizedSignal = initDigitizedSignal;
-
-                final boolean hasSigPlus = plotEntries.hasSigPlus();
-
-                for (Entry<Double, List<PlotEntryBase>> e : plotEntries.entries.entrySet()) {
-
-                    for (PlotEntryBase peb : e.getValue()) {
-                        if (peb instanceof PlotEntryDecode) {
-                            digitizedSignal = ((PlotEntryDecode)peb).dec;
-                        }
-                        else if (peb instanceof PlotEntrySigPlus) {
-                            signa = ((PlotEntrySigPlus)peb).sig;
-                            thresha = ((PlotEntrySigPlus)peb).threshold;
-                            ceiling = ((PlotEntrySigPlus)peb).ceiling;
-                            floor = ((PlotEntrySigPlus)peb).floor;
-                            sigavg = ((PlotEntrySigPlus)peb).sigAvg;
-
-                        }
-                        else if (peb instanceof PlotEntrySig) {
-                            signa = ((PlotEntrySig)peb).sig;
-                            thresha = ((PlotEntrySig)peb).threshold;
-                            ceiling = ((PlotEntrySig)peb).ceiling;
-                            floor = ((PlotEntrySig)peb).floor;
-                        }
+                for (PlotEntryBase peb : e.getValue()) {
+                    if (peb instanceof PlotEntryDecode) {
+                        digitizedSignal = ((PlotEntryDecode)peb).dec;
                     }
+                    else if (peb instanceof PlotEntrySigPlus) {
+                        signa = ((PlotEntrySigPlus)peb).sig;
+                        thresha = ((PlotEntrySigPlus)peb).threshold;
+                        ceiling = ((PlotEntrySigPlus)peb).ceiling;
+                        floor = ((PlotEntrySigPlus)peb).floor;
+                        sigavg = ((PlotEntrySigPlus)peb).sigAvg;
 
-                    if (hasSigPlus) {
-                        pc.ps.println(String.format("%f %f %f %f %f %f %f",
-                                e.getKey().doubleValue(),
-                                signa,
-                                sigavg,
-                                thresha,
-                                ceiling,
-                                floor,
-                                digitizedSignal));
                     }
-                    else {
-                        pc.ps.println(String.format("%f %f %f %f %f %f",
-                                e.getKey().doubleValue(),
-                                signa,
-                                thresha,
-                                ceiling,
-                                floor,
-                                digitizedSignal));
+                    else if (peb instanceof PlotEntrySig) {
+                        signa = ((PlotEntrySig)peb).sig;
+                        thresha = ((PlotEntrySig)peb).threshold;
+                        ceiling = ((PlotEntrySig)peb).ceiling;
+                        floor = ((PlotEntrySig)peb).floor;
                     }
                 }
 
                 if (hasSigPlus) {
-                    pc.plot(new Mode[] {
-                            Mode.LINES_PURPLE,
-                            Mode.LINES_RED,
-                            Mode.LINES_CYAN,
-                            Mode.LINES_GREEN,
-                            Mode.LINES_GREEN,
-                            Mode.LINES_CYAN});
+                    pc.ps.println(String.format("%f %f %f %f %f %f %f",
+                            e.getKey().doubleValue(),
+                            signa,
+                            sigavg,
+                            thresha,
+                            ceiling,
+                            floor,
+                            digitizedSignal));
                 }
                 else {
-                    pc.plot(new Mode[] {
-                            Mode.LINES_PURPLE,
-                            Mode.LINES_RED,
-                            Mode.LINES_GREEN,
-                            Mode.LINES_GREEN,
-                            Mode.LINES_CYAN});
+                    pc.ps.println(String.format("%f %f %f %f %f %f",
+                            e.getKey().doubleValue(),
+                            signa,
+                            thresha,
+                            ceiling,
+                            floor,
+                            digitizedSignal));
                 }
             }
 
-        }
-        catch (Exception e) {
-            new Death(e);
-        }
-
-        if (CollectorBase.windowsPlotCount > 0) {
-            GerkeLib.prompt("push Enter to exit this program: ");
+            if (hasSigPlus) {
+                pc.plot(new Mode[] {
+                        Mode.LINES_PURPLE,
+                        Mode.LINES_RED,
+                        Mode.LINES_CYAN,
+                        Mode.LINES_GREEN,
+                        Mode.LINES_GREEN,
+                        Mode.LINES_CYAN});
+            }
+            else {
+                pc.plot(new Mode[] {
+                        Mode.LINES_PURPLE,
+                        Mode.LINES_RED,
+                        Mode.LINES_GREEN,
+                        Mode.LINES_GREEN,
+                        Mode.LINES_CYAN});
+            }
         }
     }
 
@@ -951,7 +989,7 @@ new String[]{
      * @param offsetFrames
      * @return
      */
-    public static double timeSeconds(int q, int framesPerSlice, int frameRate, int offsetFrames) {
+    public static double timeSeconds(int q, int framesPerSlice, int frameRate, long offsetFrames) {
         return (((double) q)*framesPerSlice + offsetFrames)/frameRate;
     }
 
@@ -976,7 +1014,7 @@ new String[]{
 
 
     private static void showClData() {
-        if (GerkeLib.getIntOpt(O_VERBOSE) >= 2) {
+        if (GerkeLib.isEnabled(GerkeLib.DEBUG)) {
             new Info("version: %s", GerkeLib.getOpt(O_VERSION));
             new Info("WPM, tentative: %f", GerkeLib.getDoubleOpt(O_WPM));
             new Info("frequency: %d", GerkeLib.getIntOpt(O_FREQ));
@@ -191,6 +191,31 @@ public final class GerkeLib {
     }
 
 
+    /**
+     * Verbosity levels, as given by repeated -v options.
+     */
+    public static final int INFO = 1;
+    public static final int DEBUG = 2;
+    public static final int TRACE = 3;
+
+    /**
+     * Cached verbosity, -1 if not yet known.
+     */
+    private static volatile int verbosity = -1;
+
+    /**
+     * True if messages of the given level are output. Use this to guard
+     * logging that is costly to prepare.
+     */
+    public static boolean isEnabled(int level) {
+        int v = verbosity;
+        if (v == -1) {
+            v = getIntOpt("verbose");
+            verbosity = v;
+        }
+        return v >= level;
+    }
+
     public static class Message {
         public Message(String prefix, String message, boolean output) {
             if (output) {
@@ -201,194 +226,194 @@ public final class GerkeLib {
 
     public static class Trace extends Message {
         public Trace(String message) {
-            super("TRACE", message, getIntOpt("verbose") >= 3);
+            super("TRACE", message, isEnabled(TRACE));
         }
         
         public Trace(String format, int j) {
-            this(String.format(format, j));
+            this(isEnabled(TRACE) ? String.format(format, j) : null);
         }
 
         public Trace(String format, int j, double x) {
-            this(String.format(format, j, x));
+            this(isEnabled(TRACE) ? String.format(format, j, x) : null);
         }
         
         public Trace(String format, int j, double x, double y) {
-            this(String.format(format, j, x, y));
+            this(isEnabled(TRACE) ? String.format(format, j, x, y) : null);
         }
 
         public Trace(String format, int j, int k, double x, double y) {
-            this(String.format(format, j, k, x, y));
+            this(isEnabled(TRACE) ? String.format(format, j, k, x, y) : null);
         }
 
         public Trace(String format, double x) {
-            this(String.format(format, x));
+            this(isEnabled(TRACE) ? String.format(format, x) : null);
         }
         
         public Trace(String format, int i, double a, double b, double c, double d, double e, double f) {
-            this(String.format(format, i, a, b, c, d, e, f));
+            this(isEnabled(TRACE) ? String.format(format, i, a, b, c, d, e, f) : null);
         }
     }
 
     public static class Debug extends Message {
         public Debug(String message) {
-            super("DEBUG", message, getIntOpt("verbose") >= 2);
+            super("DEBUG", message, isEnabled(DEBUG));
         }
 
         public Debug(String format, int i, String s) {
-            this(String.format(format, i, s));
+            this(isEnabled(DEBUG) ? String.format(format, i, s) : null);
         }
 
         public Debug(String format, int i, double v) {
-            this(String.format(format, i, v));
+            this(isEnabled(DEBUG) ? String.format(format, i, v) : null);
         }
 
         public Debug(String format, int i) {
-            this(String.format(format, i));
+            this(isEnabled(DEBUG) ? String.format(format, i) : null);
         }
 
         public Debug(String format, int i, double x, double y) {
-            this(String.format(format, i, x, y));
+            this(isEnabled(DEBUG) ? String.format(format, i, x, y) : null);
         }
 
         public Debug(String format, int i, int j) {
-            this(String.format(format, i, j));
+            this(isEnabled(DEBUG) ? String.format(format, i, j) : null);
         }
 
         public Debug(String format, int i, int j, int k) {
-            this(String.format(format, i, j, k));
+            this(isEnabled(DEBUG) ? String.format(format, i, j, k) : null);
         }
 
         public Debug(String format, int i, int j, double v) {
-            this(String.format(format, i, j, v));
+            this(isEnabled(DEBUG) ? String.format(format, i, j, v) : null);
         }
 
         public Debug(String format, int i, int j, double v, double w) {
-            this(String.format(format, i, j, v, w));
+            this(isEnabled(DEBUG) ? String.format(format, i, j, v, w) : null);
         }
 
         public Debug(String format, int i, int j, double v, double w, double x) {
-            this(String.format(format, i, j, v, w, x));
+            this(isEnabled(DEBUG) ? String.format(format, i, j, v, w, x) : null);
         }
 
         public Debug(String format, int i, double a, double b, double c, double d, double e, double f) {
-            this(String.format(format, i, a, b, c, d, e, f));
+            this(isEnabled(DEBUG) ? String.format(format, i, a, b, c, d, e, f) : null);
         }
 
         public Debug(String format, long j, long k) {
-            this(String.format(format, j, k));
+            this(isEnabled(DEBUG) ? String.format(format, j, k) : null);
         }
 
         public Debug(String format, double x) {
-            this(String.format(format, x));
+            this(isEnabled(DEBUG) ? String.format(format, x) : null);
         }
 
         public Debug(String format, double x, double y) {
-            this(String.format(format, x, y));
+            this(isEnabled(DEBUG) ? String.format(format, x, y) : null);
         }
 
         public Debug(String format, double x, int k, double y) {
-            this(String.format(format, x, k, y));
+            this(isEnabled(DEBUG) ? String.format(format, x, k, y) : null);
         }
 
         public Debug(String format, String s, double x) {
-            this(String.format(format, s, x));
+            this(isEnabled(DEBUG) ? String.format(format, s, x) : null);
         }
     }
 
     public static class Info extends Message {
         public Info(String message) {
-            super("INFO", message, getIntOpt("verbose") >= 1);
+            super("INFO", message, isEnabled(INFO));
         }
 
         public Info(String format, int value) {
-            this(String.format(format, value));
+            this(isEnabled(INFO) ? String.format(format, value) : null);
         }
 
         public Info(String format, int v1, int v2) {
-            this(String.format(format, v1, v2));
+            this(isEnabled(INFO) ? String.format(format, v1, v2) : null);
         }
 
         public Info(String format, int i, int j, int k) {
-            this(String.format(format, i, j, k));
+            this(isEnabled(INFO) ? String.format(format, i, j, k) : null);
         }
 
         public Info(String format, int v1, int v2, double v) {
-            this(String.format(format, v1, v2, v));
+            this(isEnabled(INFO) ? String.format(format, v1, v2, v) : null);
         }
 
         public Info(String format, int i, int j, double v, double w) {
-            this(String.format(format, i, j, v, w));
+            this(isEnabled(INFO) ? String.format(format, i, j, v, w) : null);
         }
 
         public Info(String format, int k, double v) {
-            this(String.format(format, k, v));
+            this(isEnabled(INFO) ? String.format(format, k, v) : null);
         }
 
         public Info(String format, int k, double u, double v) {
-            this(String.format(format, k, u, v));
+            this(isEnabled(INFO) ? String.format(format, k, u, v) : null);
         }
 
         public Info(String format, int v, String s) {
-            this(String.format(format, v, s));
+            this(isEnabled(INFO) ? String.format(format, v, s) : null);
         }
 
 
 
         public Info(String format, long value) {
-            this(String.format(format, value));
+            this(isEnabled(INFO) ? String.format(format, value) : null);
         }
 
         public Info(String format, long v1, long v2) {
-            this(String.format(format, v1, v2));
+            this(isEnabled(INFO) ? String.format(format, v1, v2) : null);
         }
         public Info(String format, double value) {
-            this(String.format(format, value));
+            this(isEnabled(INFO) ? String.format(format, value) : null);
         }
 
         public Info(String format, double x, int k, double y) {
-            this(String.format(format, x, k, y));
+            this(isEnabled(INFO) ? String.format(format, x, k, y) : null);
         }
 
         public Info(String format, double x, int k, double y, double z) {
-            this(String.format(format, x, k, y, z));
+            this(isEnabled(INFO) ? String.format(format, x, k, y, z) : null);
         }
 
         public Info(String format, double x, double y) {
-            this(String.format(format, x, y));
+            this(isEnabled(INFO) ? String.format(format, x, y) : null);
         }
 
         public Info(String format, double x, double y, int j) {
-            this(String.format(format, x, y, j));
+            this(isEnabled(INFO) ? String.format(format, x, y, j) : null);
         }
 
         public Info(String format, double x, double y, double z) {
-            this(String.format(format, x, y, z));
+            this(isEnabled(INFO) ? String.format(format, x, y, z) : null);
         }
 
         public Info(String format, double t, double x, double y, double z) {
-            this(String.format(format, t, x, y, z));
+            this(isEnabled(INFO) ? String.format(format, t, x, y, z) : null);
         }
 
 
 
         public Info(String format, boolean value) {
-            this(String.format(format, value));
+            this(isEnabled(INFO) ? String.format(format, value) : null);
         }
 
         public Info(String format, boolean value, String s) {
-            this(String.format(format, value, s));
+            this(isEnabled(INFO) ? String.format(format, value, s) : null);
         }
 
         public Info(String format, String value) {
-            this(String.format(format, value));
+            this(isEnabled(INFO) ? String.format(format, value) : null);
         }
 
         public Info(String format, String s, int value) {
-            this(String.format(format, s, value));
+            this(isEnabled(INFO) ? String.format(format, s, value) : null);
         }
 
         public Info(String format, String s, Double value) {
-            this(String.format(format, s, value));
+            this(isEnabled(INFO) ? String.format(format, s, value) : null);
         }
 
 
@@ -438,12 +463,37 @@ public final class GerkeLib {
     }
 
 
+    /**
+     * Thrown instead of terminating when a Death occurs in a thread
+     * that has called survive().
+     */
+    public static class DeathException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public DeathException(String message) {
+            super(message);
+        }
+    }
+
+    private static final ThreadLocal<Boolean> survivor = new ThreadLocal<Boolean>();
+
+    /**
+     * Let a Death in the current thread throw DeathException rather
+     * than terminate the program.
+     */
+    public static void survive() {
+        survivor.set(Boolean.TRUE);
+    }
+
     /**
      * Call any of the constructors to terminate unsuccessfully.
      */
     public static class Death extends Message {
         public Death(String message) {
             super("FATAL", message, true);
+            if (survivor.get() != null) {
+                throw new DeathException(message);
+            }
             System.exit(1);
         }
 
@@ -530,7 +580,25 @@ public final class GerkeLib {
     }
 
     public static String[] getOptMulti(String key) {
-        final String multiValue = getOpt(key);
+        return splitMulti(getOpt(key));
+    }
+
+    public static int[] getIntOptMulti(String key) {
+        return parseIntMulti(getOpt(key));
+    }
+
+    public static double[] getDoubleOptMulti(String key) {
+        return parseDoubleMulti(getOpt(key));
+    }
+
+    public static String[] getStringOptMulti(String key) {
+        return splitMulti(getOpt(key));
+    }
+
+    /**
+     * Splits a comma-separated option value.
+     */
+    public static String[] splitMulti(String multiValue) {
         final StringTokenizer st = new StringTokenizer(multiValue, ",");
         final String[] result = new String[st.countTokens()];
         for (int k = 0; k < result.length; k++) {
@@ -539,13 +607,15 @@ public final class GerkeLib {
         return result;
     }
 
-    public static int[] getIntOptMulti(String key) {
-        final String multiValue = getOpt(key);
-        final StringTokenizer st = new StringTokenizer(multiValue, ",");
-        final int[] result = new int[st.countTokens()];
+    /**
+     * Parses a comma-separated option value. Non-numeric items are taken as 0.
+     */
+    public static int[] parseIntMulti(String multiValue) {
+        final String[] items = splitMulti(multiValue);
+        final int[] result = new int[items.length];
         for (int k = 0; k < result.length; k++) {
             try {
-                result[k] = Integer.parseInt(st.nextToken());
+                result[k] = Integer.parseInt(items[k]);
             }
             catch (NumberFormatException e) {
                 result[k] = 0;
@@ -554,13 +624,15 @@ public final class GerkeLib {
         return result;
     }
 
-    public static double[] getDoubleOptMulti(String key) {
-        final String multiValue = getOpt(key);
-        final StringTokenizer st = new StringTokenizer(multiValue, ",");
-        final double[] result = new double[st.countTokens()];
+    /**
+     * Parses a comma-separated option value. Non-numeric items are taken as 0.0.
+     */
+    public static double[] parseDoubleMulti(String multiValue) {
+        final String[] items = splitMulti(multiValue);
+        final double[] result = new double[items.length];
         for (int k = 0; k < result.length; k++) {
             try {
-                result[k] = Double.parseDouble(st.nextToken());
+                result[k] = Double.parseDouble(items[k]);
             }
             catch (NumberFormatException e) {
                 result[k] = 0.0;
@@ -569,16 +641,6 @@ public final class GerkeLib {
         return result;
     }
 
-    public static String[] getStringOptMulti(String key) {
-        final String multiValue = getOpt(key);
-        final StringTokenizer st = new StringTokenizer(multiValue, ",");
-        final String[] result = new String[st.countTokens()];
-        for (int k = 0; k < result.length; k++) {
-            result[k] = st.nextToken();
-        }
-        return result;
-    }
-
     public static int getOptMultiLength(String key) {
         final String multiValue = getOpt(key);
         final StringTokenizer st = new StringTokenizer(multiValue, ",");
@@ -621,6 +683,7 @@ public final class GerkeLib {
                 k++;
             }
         }
+        verbosity = -1;
     }
 
     public static String getArgument(int i) {
@@ -4,11 +4,12 @@ import uk.me.berndporr.iirj.Butterworth;
 
 public final class LowpassButterworth implements LowpassFilter {
     
-    private final Butterworth filter;
+    private final BiquadCascade filter;
     
     public LowpassButterworth(int order, double sampleRate, double cutoffFrequency, double ignored) {
-        filter = new Butterworth();
-        filter.lowPass(order, sampleRate, cutoffFrequency);
+        final Butterworth design = new Butterworth();
+        design.lowPass(order, sampleRate, cutoffFrequency);
+        filter = new BiquadCascade(design);
     }
 
     @Override
@@ -16,6 +17,11 @@ public final class LowpassButterworth implements LowpassFilter {
         return filter.filter(in);
     }
 
+    @Override
+    public void filter(double[] in, int off, int len, double[] out) {
+        filter.filter(in, off, len, out);
+    }
+
     @Override
     public void reset() {
     }
@@ -5,14 +5,15 @@ import uk.me.berndporr.iirj.ChebyshevI;
 public final class LowpassChebyshevI implements LowpassFilter {
 
     
-    private final ChebyshevI filter;
+    private final BiquadCascade filter;
     
     
     
     
     public LowpassChebyshevI(int order, double sampleRate, double cutoffFrequency, double rippleDb) {
-        filter = new ChebyshevI();
-        filter.lowPass(order, sampleRate, cutoffFrequency, rippleDb);
+        final ChebyshevI design = new ChebyshevI();
+        design.lowPass(order, sampleRate, cutoffFrequency, rippleDb);
+        filter = new BiquadCascade(design);
     }
 
     @Override
@@ -20,6 +21,11 @@ public final class LowpassChebyshevI implements LowpassFilter {
         return filter.filter(in);
     }
 
+    @Override
+    public void filter(double[] in, int off, int len, double[] out) {
+        filter.filter(in, off, len, out);
+    }
+
     @Override
     public void reset() {
     }
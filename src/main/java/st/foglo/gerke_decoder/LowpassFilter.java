@@ -3,6 +3,13 @@ package st.foglo.gerke_decoder;
 public interface LowpassFilter {
 
     double filter(double in);
+
+    /**
+     * Filters in[off] to in[off+len-1] into the same positions of out,
+     * with the same result as calling filter(double) on each value. The
+     * arrays may be the same.
+     */
+    void filter(double[] in, int off, int len, double[] out);
     
     void reset();
 }
@@ -7,6 +7,13 @@ public final class LowpassNone implements LowpassFilter {
         return in;
     }
 
+    @Override
+    public void filter(double[] in, int off, int len, double[] out) {
+        if (in != out) {
+            System.arraycopy(in, off, out, off, len);
+        }
+    }
+
     @Override
     public void reset() {
     }
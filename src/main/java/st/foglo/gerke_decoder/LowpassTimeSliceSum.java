@@ -25,6 +25,19 @@ public final class LowpassTimeSliceSum implements LowpassFilter {
         return sum/callCount;
     }
 
+    @Override
+    public void filter(double[] in, int off, int len, double[] out) {
+        double s = sum;
+        int c = callCount;
+        for (int i = off; i < off + len; i++) {
+            s += in[i];
+            c++;
+            out[i] = s/c;
+        }
+        sum = s;
+        callCount = c;
+    }
+
     @Override
     public void reset() {
         sum = 0.0;
@@ -35,6 +35,21 @@ public final class LowpassWindow implements LowpassFilter {
         return arraySum/windowSize;
     }
 
+    @Override
+    public void filter(double[] in, int off, int len, double[] out) {
+        double s = arraySum;
+        int k = index;
+        for (int i = off; i < off + len; i++) {
+            final double value = in[i];
+            s += (value - window[k]);
+            window[k] = value;
+            k = k + 1 == windowSize ? 0 : k + 1;
+            out[i] = s/windowSize;
+        }
+        arraySum = s;
+        index = k;
+    }
+
     @Override
     public void reset() {
         arraySum = 0.0;
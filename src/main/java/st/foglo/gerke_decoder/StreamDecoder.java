@@ -0,0 +1,189 @@
+package st.foglo.gerke_decoder;
+
+import st.foglo.gerke_decoder.GerkeDecoder.DetectorIndex;
+import st.foglo.gerke_decoder.GerkeLib.Death;
+import st.foglo.gerke_decoder.GerkeLib.Debug;
+import st.foglo.gerke_decoder.GerkeLib.Info;
+import st.foglo.gerke_decoder.decoder.DecoderBase;
+import st.foglo.gerke_decoder.detector.Periodogram;
+import st.foglo.gerke_decoder.detector.cw_basic.CwBasicImpl;
+import st.foglo.gerke_decoder.format.Formatter;
+import st.foglo.gerke_decoder.wave.PcmStream;
+import st.foglo.gerke_decoder.wave.Wav;
+
+/**
+ * Decodes audio from standard input in overlapping windows, so that text
+ * is written with bounded latency and memory use is bounded by the window
+ * size.
+ *
+ * Each window ends one hop after the previous one. The characters that
+ * end before a guard interval at the end of the window are written,
+ * except those that were written by an earlier window. The guard lets the
+ * space after a character, and the floor and ceiling around it, be seen
+ * before the character is written. Each window starts a lookback interval
+ * before the end of the text written so far, so that the characters that
+ * are next to be written are decoded with their context. Windows start at
+ * whole seconds, which keeps timestamps right.
+ *
+ * Estimates are carried from window to window. The tone frequency is
+ * taken from a periodogram of the stream, where older audio weighs less,
+ * and the clip level is smoothed over windows in the same way. The -f and
+ * -c options override the estimates. The adaptive detector, which finds
+ * the frequency per segment, searches a narrowed range around the stream
+ * frequency instead.
+ */
+final class StreamDecoder {
+
+    /**
+     * Guard interval, in TU. Covers the word space limit and the
+     * half-width of floor and ceiling estimation.
+     */
+    private static final double GUARD = 16.0;               // PARAMETER
+
+    /**
+     * Lookback interval, in TU. Covers the longest character, the space
+     * before it, and the half-width of floor and ceiling estimation.
+     */
+    private static final double LOOKBACK = 50.0;            // PARAMETER
+
+    /**
+     * A character that ends within this many TU after the last character
+     * written is the same character, decoded again.
+     */
+    private static final double MARGIN = 1.0;               // PARAMETER
+
+    /**
+     * Time constant for forgetting earlier audio in the estimates, seconds.
+     */
+    private static final double MEMORY = 60.0;              // PARAMETER
+
+    /**
+     * Half-width of the frequency range searched by the adaptive detector, Hz.
+     */
+    private static final double FREQ_SPAN = 50.0;           // PARAMETER
+
+    private final DecoderConfig cfg;
+    private final Formatter formatter;
+    private final boolean adaptive;
+
+    private double clipLevel = -1.0;       // smoothed estimate, -1 before the first window
+
+    StreamDecoder(DecoderConfig cfg, Formatter formatter) {
+        this.cfg = cfg;
+        this.formatter = formatter;
+        this.adaptive = DecoderBase.getDetector(cfg.decoder) == DetectorIndex.ADAPTIVE_DETECTOR;
+    }
+
+    void run() throws Exception {
+
+        if (cfg.hasPlots()) {
+            new Death("plots are not supported when decoding standard input");
+        }
+        if (cfg.offset != 0 || cfg.length != -1) {
+            new Death("options -o and -l are not supported when decoding standard input");
+        }
+
+        final double tuSeconds = 1.2/cfg.wpm;
+        final double guard = GUARD*tuSeconds;
+        if (cfg.latency <= guard) {
+            new Death("latency must be more than %.1f s at the given WPM", guard);
+        }
+
+        final PcmStream ps = new PcmStream(System.in, cfg);
+        final int frameRate = ps.frameRate;
+        final long hopFrames = Math.round((cfg.latency - guard)*frameRate);
+        final long guardFrames = Math.round(guard*frameRate);
+        final long lookback = (long) Math.ceil(
+                Math.max(LOOKBACK*tuSeconds, adaptive ? cfg.segSize : 0.0));      // seconds
+
+        final int framesPerSlice = GerkeDecoder.framesPerSlice(cfg, frameRate);
+        final Periodogram periodogram = new Periodogram(framesPerSlice, frameRate);
+
+        long start = 0;
+        long end = hopFrames + guardFrames;
+        long fed = 0;                      // frames given to the periodogram
+        for (Wav w = ps.next(start, (int) (end - start)); w != null; w = ps.next(start, (int) (end - start))) {
+
+            final long wEnd = start + w.nofFrames;
+            final boolean last = ps.ended();
+            if (w.nofFrames < frameRate) {
+                // can only happen if the stream is very short
+                new Info("too few frames to decode: %d", w.nofFrames);
+                break;
+            }
+
+            final double decay = Math.exp(-(wEnd - fed)/(MEMORY*frameRate));
+            periodogram.decay(decay);
+            feed(periodogram, w, fed - start);
+            periodogram.finish();
+            fed = wEnd;
+
+            final long written = wEnd - guardFrames;
+            formatter.setWindow(
+                    last ? Double.POSITIVE_INFINITY : (double) written/frameRate,
+                    MARGIN*tuSeconds);
+            new Debug("window: %d to %d", start, wEnd);
+            GerkeDecoder.decode(windowConfig(w, periodogram, framesPerSlice, 1.0 - decay),
+                    w, formatter, (int) (start/frameRate));
+            System.out.flush();
+
+            if (last) {
+                break;
+            }
+            start = Math.max(0, written/frameRate - lookback)*frameRate;
+            end += hopFrames;
+        }
+
+        formatter.clearWindow();
+        formatter.flush();
+        if (formatter.getPos() > 0) {
+            formatter.newLine();
+        }
+    }
+
+    /**
+     * Gives the frames of the window from the given index on to the
+     * periodogram.
+     */
+    private static void feed(Periodogram periodogram, Wav w, long first) {
+        final short[] block = new short[4096];
+        for (long k = first; k < w.nofFrames; ) {
+            final int n = (int) Math.min(block.length, w.nofFrames - k);
+            for (int i = 0; i < n; i++) {
+                block[i] = w.wav.get(k + i);
+            }
+            periodogram.accept(block, n);
+            k += n;
+        }
+    }
+
+    /**
+     * The configuration for decoding the given window, with the estimates
+     * carried over from earlier windows. The weight is that of the new
+     * frames in the window, relative to the earlier ones.
+     */
+    private DecoderConfig windowConfig(
+            Wav w, Periodogram periodogram, int framesPerSlice, double weight) throws InterruptedException {
+
+        final int freq = cfg.freq != -1 ? cfg.freq :
+            CwBasicImpl.bestFrequency(periodogram, (int) cfg.freqLow, (int) cfg.freqHigh, null);
+
+        if (adaptive) {
+            final double fLow = Math.max(cfg.freqLow, freq - FREQ_SPAN);
+            final double fHigh = Math.min(cfg.freqHigh, freq + FREQ_SPAN);
+            new Debug("frequency range: %.0f to %.0f", fLow, fHigh);
+            return cfg.with(GerkeDecoder.O_FRANGE, String.format("%.0f,%.0f", fLow, fHigh));
+        }
+
+        if (cfg.clipLevel == -1) {
+            final int estimate = CwBasicImpl.estimateClipLevel(w, framesPerSlice, freq);
+            clipLevel = clipLevel < 0.0 ? estimate : clipLevel + weight*(estimate - clipLevel);
+        }
+        else {
+            clipLevel = cfg.clipLevel;
+        }
+        return cfg
+                .with(GerkeDecoder.O_FREQ, String.valueOf(freq))
+                .with(GerkeDecoder.O_CLIPPING, String.valueOf(Math.round(clipLevel)));
+    }
+}
@@ -67,6 +67,14 @@ public final class Dash extends ToneBase {
     }
 
 
+    /**
+     * Greatest distance from k of the slices that are read when the rise
+     * and drop of a dash at k are searched.
+     */
+    public static int reach(int jDash, int jDot) {
+        return (int) Math.round(STRETCH_FACTOR*jDash) + jDot;
+    }
+
     // TODO, the factor 2 in 2*jDot SEEMS beneficial .... analysis needed though
 
     private static int findRise(int k, double[] sig, int jDash, int jDot) {
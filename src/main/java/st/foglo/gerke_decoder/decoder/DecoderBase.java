@@ -2,6 +2,7 @@ package st.foglo.gerke_decoder.decoder;
 
 import java.util.NavigableMap;
 
+import st.foglo.gerke_decoder.DecoderConfig;
 import st.foglo.gerke_decoder.GerkeDecoder;
 import st.foglo.gerke_decoder.GerkeLib;
 import st.foglo.gerke_decoder.GerkeDecoder.DetectorIndex;
@@ -45,7 +46,9 @@ public abstract class DecoderBase implements Decoder {
 
     public final double threshold;
     
-    protected final double spExp = GerkeLib.getDoubleOpt(GerkeDecoder.O_SPACE_EXP);
+    protected final double spExp;
+
+    protected final DecoderConfig cfg;
 
     public class Wpm {
 
@@ -107,10 +110,12 @@ public abstract class DecoderBase implements Decoder {
         }
     }
 
-    protected DecoderBase(double tuMillis, int framesPerSlice, double tsLength, int offset, Wav w, double[] sig,
+    protected DecoderBase(DecoderConfig cfg, double tuMillis, int framesPerSlice, double tsLength, int offset, Wav w, double[] sig,
             PlotEntries plotEntries, Formatter formatter, double[] cei, double[] flo, double ceilingMax,
             double threshold) {
 
+        this.cfg = cfg;
+        this.spExp = cfg.spaceExp;
         this.tuMillis = tuMillis;
         this.framesPerSlice = framesPerSlice;
         this.tsLength = tsLength;
@@ -126,10 +131,12 @@ public abstract class DecoderBase implements Decoder {
         this.threshold = threshold;
     }
 
-    protected DecoderBase(double tuMillis, int framesPerSlice, double tsLength, int offset, Wav w, double[] sig,
+    protected DecoderBase(DecoderConfig cfg, double tuMillis, int framesPerSlice, double tsLength, int offset, Wav w, double[] sig,
             PlotEntries plotEntries, HistEntries histEntries, Formatter formatter, double[] cei, double[] flo,
             double ceilingMax, double threshold) {
 
+        this.cfg = cfg;
+        this.spExp = cfg.spaceExp;
         this.tuMillis = tuMillis;
         this.framesPerSlice = framesPerSlice;
         this.tsLength = tsLength;
@@ -269,7 +276,7 @@ public abstract class DecoderBase implements Decoder {
         new Debug("thresholdMax is: %e", thresholdMax);
 
         for (int q = 0; true; q++) {
-            if (w.wav.length - q * framesPerSlice < framesPerSlice) {
+            if (w.nofFrames - (long) q*framesPerSlice < framesPerSlice) {
                 break;
             }
 
@@ -309,14 +316,17 @@ public abstract class DecoderBase implements Decoder {
         new Debug("thresholdMax is: %e", thresholdMax);
         new Debug("tsLength is: %e", tsLength);
         new Debug("silentTu is: %e", silentTu);
-        final double dipLimit = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.DIP.ordinal()];
+        final double dipLimit = cfg.getHiddenDouble(HiddenOpts.DIP);
         final int veryShortDip = (int) Math.round(0.2 / tsLength); // PARAMETER 0.2
 
+        final boolean trace = GerkeLib.isEnabled(GerkeLib.TRACE);
         for (int t = 1; t < transIndex; t++) {
             if (transIndex > 0 && tr[t].rise && tr[t].dipAcc != -1.0
                     && (tr[t].dipAcc < dipLimit * silentTu || tr[t].q - tr[t - 1].q <= veryShortDip)) {
-                new Trace("dip at: %d, width: %d, mass: %f, fraction: %f", t, tr[t].q - tr[t - 1].q, tr[t].dipAcc,
-                        tr[t].dipAcc / silentTu);
+                if (trace) {
+                    new Trace("dip at: %d, width: %d, mass: %f, fraction: %f", t, tr[t].q - tr[t - 1].q, tr[t].dipAcc,
+                            tr[t].dipAcc / silentTu);
+                }
                 if (t + 1 < transIndex) {
                     // preserve accumulated spike value
                     tr[t + 1] = new Trans(tr[t + 1].q, false, tr[t + 1].spikeAcc + tr[t - 1].spikeAcc, tr[t].ceiling,
@@ -324,7 +334,7 @@ public abstract class DecoderBase implements Decoder {
                 }
                 tr[t - 1] = null;
                 tr[t] = null;
-            } else if (transIndex > 0 && tr[t].rise && tr[t].dipAcc != -1.0 && t % 200 == 0) {
+            } else if (trace && transIndex > 0 && tr[t].rise && tr[t].dipAcc != -1.0 && t % 200 == 0) {
                 new Trace("dip at: %d, width: %d, mass: %e, limit: %e", t, tr[t].q - tr[t - 1].q, tr[t].dipAcc,
                         dipLimit * silentTu);
             }
@@ -345,7 +355,7 @@ public abstract class DecoderBase implements Decoder {
 
         final int veryShortSpike = (int) Math.round(0.2 / tsLength); // PARAMETER 0.2
         if (hasSpikes) {
-            final double spikeLimit = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.SPIKE.ordinal()];
+            final double spikeLimit = cfg.getHiddenDouble(HiddenOpts.SPIKE);
             for (int t = 1; t < transIndex; t++) {
                 if (!tr[t].rise && tr[t].spikeAcc != -1.0
                         && (tr[t].spikeAcc < spikeLimit * silentTu || tr[t].q - tr[t - 1].q <= veryShortSpike)) {
@@ -358,8 +368,7 @@ public abstract class DecoderBase implements Decoder {
 
         // break up very long dashes
 
-        final boolean breakLongDash = GerkeLib.getIntOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.BREAK_LONG_DASH
-                .ordinal()] == 1;
+        final boolean breakLongDash = cfg.getHiddenInt(HiddenOpts.BREAK_LONG_DASH) == 1;
 
         if (breakLongDash) {
             // TODO, refactor .. break off the first dash, then reconsider the rest
@@ -440,6 +449,6 @@ public abstract class DecoderBase implements Decoder {
                 throw new RuntimeException();
             }
         }
-        new GerkeLib.Debug("nof. dots: %d, dashes: %d", dotCount, dashCount);
+        new Debug("nof. dots: %d, dashes: %d", dotCount, dashCount);
     }
 }
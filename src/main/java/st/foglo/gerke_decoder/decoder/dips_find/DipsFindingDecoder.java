@@ -1,6 +1,6 @@
 package st.foglo.gerke_decoder.decoder.dips_find;
 
-import st.foglo.gerke_decoder.GerkeLib;
+import st.foglo.gerke_decoder.DecoderConfig;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -38,6 +38,7 @@ public final class DipsFindingDecoder extends DecoderBase {
             (int) Math.round(spExp*GerkeDecoder.CHAR_SPACE_LIMIT[decoder]*tuMillis*w.frameRate/(1000*framesPerSlice));
 
     public DipsFindingDecoder(
+            DecoderConfig cfg,
             double tuMillis,
             int framesPerSlice,
             double tsLength,
@@ -56,6 +57,7 @@ public final class DipsFindingDecoder extends DecoderBase {
             double level
             ) {
         super(
+                cfg,
                 tuMillis,
                 framesPerSlice,
                 tsLength,
@@ -91,13 +93,13 @@ public final class DipsFindingDecoder extends DecoderBase {
         /**
 -        * Merge dips when closer than this distance. Unit is TUs.
 -        */
-        final double dipMergeLim = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.DIP_MERGE_LIM.ordinal()];
+        final double dipMergeLim = cfg.getHiddenDouble(HiddenOpts.DIP_MERGE_LIM);
 
         /**
          * Dips of lesser strength are ignored. A too high value will cause
          * weak dips to be ignored, so that 'i' prints as 't' for example.
          */
-        final double dipStrengthMin = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.DIP_STRENGTH_MIN.ordinal()];
+        final double dipStrengthMin = cfg.getHiddenDouble(HiddenOpts.DIP_STRENGTH_MIN);
 
         if (plotEntries != null) {
             // make one "decode" entry at left edge of plot
@@ -130,9 +132,9 @@ public final class DipsFindingDecoder extends DecoderBase {
                             formatter, plotEntries, ceilingMax);
                     wpm.chTicks += trans[t-1].q - beginChar;
                     final int ts =
-                            GerkeLib.getFlag(GerkeDecoder.O_TSTAMPS) ?
+                            cfg.timestamps ?
                             offset + (int) Math.round(trans[t].q*tsLength*tuMillis/1000) : -1;
-                    formatter.add(true, "", ts);
+                    formatter.add(true, "", ts, w.secondsFromSliceIndex(trans[t-1].q, framesPerSlice));
                     beginChar = trans[t].q;
                     wpm.spCusW += 7;
                     wpm.spTicksW += trans[t].q - trans[t-1].q;
@@ -335,7 +337,7 @@ private void decodeGapChar(
     }
 
     new Debug("char no: %d, decoded: %s", charNo, p.text);
-    formatter.add(false, p.text, -1);
+    formatter.add(false, p.text, -1, w.secondsFromSliceIndex(q2, framesPerSlice));
     wpm.chCus += p.nTus;
 }
 
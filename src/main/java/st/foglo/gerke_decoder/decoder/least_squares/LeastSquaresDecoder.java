@@ -5,7 +5,7 @@ import java.util.List;
 import java.util.NavigableMap;
 import java.util.TreeMap;
 
-import st.foglo.gerke_decoder.GerkeLib;
+import st.foglo.gerke_decoder.DecoderConfig;
 import st.foglo.gerke_decoder.GerkeDecoder;
 import st.foglo.gerke_decoder.GerkeDecoder.DecoderIndex;
 import st.foglo.gerke_decoder.GerkeLib.Debug;
@@ -51,6 +51,7 @@ public final class LeastSquaresDecoder extends DecoderBase implements Decoder {
     }
 
     public LeastSquaresDecoder(
+            DecoderConfig cfg,
             double tuMillis,
             int framesPerSlice,
             double tsLength,
@@ -68,6 +69,7 @@ public final class LeastSquaresDecoder extends DecoderBase implements Decoder {
 
             ) {
         super(
+                cfg,
                 tuMillis,
                 framesPerSlice,
                 tsLength,
@@ -88,7 +90,7 @@ public final class LeastSquaresDecoder extends DecoderBase implements Decoder {
 
         final int decoder = DecoderIndex.LEAST_SQUARES.ordinal();
 
-        final double level = GerkeLib.getDoubleOpt(GerkeDecoder.O_LEVEL);
+        final double level = cfg.level;
 
         final NavigableMap<Integer, ToneBase> dashes = new TreeMap<Integer, ToneBase>();
 
@@ -127,6 +129,7 @@ public final class LeastSquaresDecoder extends DecoderBase implements Decoder {
 
         // scan for candidate dashes
         TwoDoubles prevD = new TwoDoubles(0.0, Double.MAX_VALUE);
+        final int dashReach = Dash.reach(jDash, jDot);
 
         Dash prevDash = null;
         for (int k = 0 + jDash + jDot; k < sigSize - jDash - jDot; k++) {
@@ -160,8 +163,8 @@ public final class LeastSquaresDecoder extends DecoderBase implements Decoder {
                 }
 
                 try {
-                    // index out of bounds can happen?
-                    if (dashStrength > dashStrengthLimit) {
+                    // the rise and drop are searched within dashReach of kBest
+                    if (dashStrength > dashStrengthLimit && kBest - dashReach >= 0 && kBest + dashReach < sigSize) {
 
                         final double t = w.secondsFromSliceIndex(kBest, framesPerSlice);
                         final boolean talk = t > 130.2 && t < 130.7;
@@ -298,7 +301,8 @@ public final class LeastSquaresDecoder extends DecoderBase implements Decoder {
                     final TwoDoubles u1 = lsq(sig, kBest - jDot, jDot, wDot);
                     final TwoDoubles u2 = lsq(sig, kBest + jDot, jDot, wDot);
 
-                    if (u1.b > 0 && u2.b < 0) {
+                    if (u1.b > 0 && u2.b < 0 && k - 3*jDot >= 0 && k + 3*jDot < sigSize) {
+                        // the rise and drop are searched within 3*jDot of k
                         final Dot newDot = new Dot(k, jDot, sig);
                         dots.put(Integer.valueOf(kBest), newDot);
                                 //new Dot(kBest, kBest - jDot, kBest + jDot));
@@ -311,7 +315,7 @@ public final class LeastSquaresDecoder extends DecoderBase implements Decoder {
                         final TwoDoubles uu1 = lsq(sig, kBest - jDotFat, jDot, wDot);
                         final TwoDoubles uu2 = lsq(sig, kBest + jDotFat, jDot, wDot);
 
-                        if (uu1.b > 0 && uu2.b < 0) {
+                        if (uu1.b > 0 && uu2.b < 0 && k - 3*jDotFat >= 0 && k + 3*jDotFat < sigSize) {
                             final Dot newDot = new Dot(k, jDotFat, sig);
                             dots.put(Integer.valueOf(kBest), newDot);
                                     //new Dot(kBest, kBest - jDot, kBest + jDot));
@@ -395,9 +399,9 @@ public final class LeastSquaresDecoder extends DecoderBase implements Decoder {
 
                     //formatter.add(true, p.text, -1);
                     final int ts =
-                            GerkeLib.getFlag(GerkeDecoder.O_TSTAMPS) ?
+                            cfg.timestamps ?
                             offset + (int) Math.round(key*tsLength*tuMillis/1000) : -1;
-                    formatter.add(true, p.text, ts);
+                    formatter.add(true, p.text, ts, w.secondsFromSliceIndex(dashes.get(prevKey).drop, framesPerSlice));
                     wpm.chCus += p.nTus;
                     wpm.spCusW += 7;
                     wpm.spTicksW += toneDistSimple(prevKey, key, dashes);
@@ -415,7 +419,7 @@ public final class LeastSquaresDecoder extends DecoderBase implements Decoder {
                     lsqPlotHelper(tb);
                 }
                 else if (toneDistSlices > charSpaceLimit) {
-                    formatter.add(false, p.text, -1);
+                    formatter.add(false, p.text, -1, w.secondsFromSliceIndex(dashes.get(prevKey).drop, framesPerSlice));
                     wpm.chCus += p.nTus;
                     wpm.spCusC += 3;
                     wpm.spTicksC += toneDistSimple(prevKey, key, dashes);
@@ -444,7 +448,7 @@ public final class LeastSquaresDecoder extends DecoderBase implements Decoder {
         }
 
         if (p != Node.tree) {
-            formatter.add(true, p.text, -1);
+            formatter.add(true, p.text, -1, w.secondsFromSliceIndex(dashes.get(prevKey).drop, framesPerSlice));
             formatter.newLine();
             wpm.chCus += p.nTus;
             wpm.chTicks += dashes.get(prevKey).drop - qCharBegin;
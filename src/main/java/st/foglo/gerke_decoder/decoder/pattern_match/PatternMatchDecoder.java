@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.Map.Entry;
 
+import st.foglo.gerke_decoder.DecoderConfig;
 import st.foglo.gerke_decoder.GerkeDecoder;
 import st.foglo.gerke_decoder.GerkeLib;
 import st.foglo.gerke_decoder.GerkeDecoder.DecoderIndex;
@@ -40,6 +41,7 @@ public final class PatternMatchDecoder extends DecoderBase {
 
     public PatternMatchDecoder(
 
+            DecoderConfig cfg,
             double tuMillis,
             int framesPerSlice,
             double tsLength,
@@ -57,6 +59,7 @@ public final class PatternMatchDecoder extends DecoderBase {
             double[] flo
             ) {
         super(
+                cfg,
                 tuMillis,
                 framesPerSlice,
                 tsLength,
@@ -144,17 +147,18 @@ public final class PatternMatchDecoder extends DecoderBase {
         int tuCount = 0;  // counters for effective WPM determination
         int qBegin = -1;
         int qEnd = 0;
+        double tEnd = 0.0;  // end of the latest character, seconds
 
 
 
         for (CharData cd : cdList) {
             qBegin = qBegin == -1 ? cd.transes.get(0).q : qBegin;
             if (cd.isEmpty()) {
-                formatter.add(true, "", ts);
+                formatter.add(true, "", ts, tEnd);
                 tuCount += 4;
             }
             else {
-                ts = GerkeLib.getFlag(GerkeDecoder.O_TSTAMPS) ?
+                ts = cfg.timestamps ?
                         offset + (int) Math.round(cd.transes.get(0).q*tsLength*tuMillis/1000) : -1;
                         final CharTemplate ct = decodeCharByPattern(cd);
                         tuCount += tuCount == 0 ? 0 : 3;
@@ -164,7 +168,8 @@ public final class PatternMatchDecoder extends DecoderBase {
                         tuCount += ct == null ? 5 : ct.pattern.length;
                         final int transesSize = cd.transes.size();
                         qEnd = cd.transes.get(transesSize-1).q;
-                        formatter.add(false, ct == null ? "???" : ct.text, -1);
+                        tEnd = w.secondsFromSliceIndex(qEnd, framesPerSlice);
+                        formatter.add(false, ct == null ? "???" : ct.text, -1, tEnd);
 
                         // if we are plotting, then collect some things here
                         if (plotEntries != null && ct != null) {
@@ -242,7 +247,7 @@ public final class PatternMatchDecoder extends DecoderBase {
             }
         }
 
-        if (GerkeLib.getIntOpt(GerkeDecoder.O_VERBOSE) >= 3) {
+        if (GerkeLib.isEnabled(GerkeLib.TRACE)) {
             System.out.println(
                     String.format(
                             "character result: %s, time: %d, class: %d, size: %d",
@@ -8,6 +8,7 @@ import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeMap;
 
+import st.foglo.gerke_decoder.DecoderConfig;
 import st.foglo.gerke_decoder.GerkeDecoder;
 import st.foglo.gerke_decoder.GerkeLib;
 import st.foglo.gerke_decoder.GerkeDecoder.DecoderIndex;
@@ -42,10 +43,11 @@ public final class IntegratingDecoder extends DecoderBase {
     final NavigableMap<Integer, ToneBase> tones = new TreeMap<Integer, ToneBase>();
 
     public IntegratingDecoder(
+            DecoderConfig cfg,
             double tuMillis, int framesPerSlice, double tsLength, int offset, Wav w, double[] sig,
             PlotEntries plotEntries, HistEntries histEntries, Formatter formatter,
             int sigSize, double[] cei, double[] flo, double level, double ceilingMax) {
-        super(tuMillis, framesPerSlice, tsLength, offset, w, sig,
+        super(cfg, tuMillis, framesPerSlice, tsLength, offset, w, sig,
                 plotEntries, histEntries, formatter, cei, flo,
                 ceilingMax, THRESHOLD);
         this.sigSize = sigSize;
@@ -141,32 +143,23 @@ public final class IntegratingDecoder extends DecoderBase {
 
         final double u = level;
 
-        final double aMin = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)
-                [HiddenOpts.ALFA_MIN.ordinal()];
+        final double aMin = cfg.getHiddenDouble(HiddenOpts.ALFA_MIN);
         
-        final double aMax = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)
-                [HiddenOpts.ALFA_MAX.ordinal()];
+        final double aMax = cfg.getHiddenDouble(HiddenOpts.ALFA_MAX);
         
-        final double aDelta = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)
-                [HiddenOpts.ALFA_STEP.ordinal()];
+        final double aDelta = cfg.getHiddenDouble(HiddenOpts.ALFA_STEP);
 
-        final double dotStrengthLimit = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)
-                [HiddenOpts.DOT_LIMIT.ordinal()];
+        final double dotStrengthLimit = cfg.getHiddenDouble(HiddenOpts.DOT_LIMIT);
         
-        final double dashStrengthLimit = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)
-                [HiddenOpts.DASH_LIMIT.ordinal()];
+        final double dashStrengthLimit = cfg.getHiddenDouble(HiddenOpts.DASH_LIMIT);
 
-        final double twoDotsStrengthLimit = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)
-                [HiddenOpts.TWO_DOTS_LIMIT.ordinal()];
+        final double twoDotsStrengthLimit = cfg.getHiddenDouble(HiddenOpts.TWO_DOTS_LIMIT);
 
-        final double peaking = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)
-                [HiddenOpts.PEAKING.ordinal()];
+        final double peaking = cfg.getHiddenDouble(HiddenOpts.PEAKING);
         
-        final double dotBaseline = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)
-                [HiddenOpts.DOT_BASELINE.ordinal()];
+        final double dotBaseline = cfg.getHiddenDouble(HiddenOpts.DOT_BASELINE);
 
-        final double dashBaseline = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)
-                [HiddenOpts.DASH_BASELINE.ordinal()];
+        final double dashBaseline = cfg.getHiddenDouble(HiddenOpts.DASH_BASELINE);
 
         // -----------------------------------------------
 
@@ -508,10 +501,10 @@ public final class IntegratingDecoder extends DecoderBase {
                 }
 
                 if (toneDistSlices > wordSpLim[prevTb.key * thisTb.key]) {
-                    final int ts = GerkeLib.getFlag(GerkeDecoder.O_TSTAMPS)
+                    final int ts = cfg.timestamps
                             ? offset + (int) Math.round(key*tsLength*tuMillis/1000)
                             : -1;
-                    formatter.add(true, p.text, ts);
+                    formatter.add(true, p.text, ts, w.secondsFromSliceIndex(toneEnd(prevKey, tones), framesPerSlice));
                     wpm.chCus += p.nTus;
                     wpm.spCusW += 7;
                     wpm.spTicksW += toneBegin(key, tones) - toneEnd(prevKey, tones);
@@ -528,7 +521,7 @@ public final class IntegratingDecoder extends DecoderBase {
                     lsqPlotHelper(tb);
 
                 } else if (toneDistSlices > charSpLim[prevTb.key * thisTb.key]) {
-                    formatter.add(false, p.text, -1);
+                    formatter.add(false, p.text, -1, w.secondsFromSliceIndex(toneEnd(prevKey, tones), framesPerSlice));
                     wpm.chCus += p.nTus;
                     wpm.spCusC += 3;
 
@@ -555,7 +548,7 @@ public final class IntegratingDecoder extends DecoderBase {
         }
 
         if (p != Node.tree) {
-            formatter.add(true, p.text, -1);
+            formatter.add(true, p.text, -1, w.secondsFromSliceIndex(toneEnd(prevKey, tones), framesPerSlice));
             formatter.newLine();
             wpm.chCus += p.nTus;
             wpm.chTicks += toneEnd(prevKey, tones) - qCharBegin;
@@ -3,7 +3,7 @@ package st.foglo.gerke_decoder.decoder.sliding_line;
 import java.util.NavigableMap;
 import java.util.TreeMap;
 
-import st.foglo.gerke_decoder.GerkeLib;
+import st.foglo.gerke_decoder.DecoderConfig;
 import st.foglo.gerke_decoder.GerkeLib.Info;
 import st.foglo.gerke_decoder.GerkeDecoder;
 import st.foglo.gerke_decoder.GerkeDecoder.DecoderIndex;
@@ -34,6 +34,7 @@ public final class SlidingLineDecoder extends DecoderBase {
     final int halfWidth = (int) Math.round( ((double)8/8) *  0.40/tsLength);
 
     public SlidingLineDecoder(
+            DecoderConfig cfg,
             double tuMillis,
             int framesPerSlice,
             double tsLength,
@@ -50,6 +51,7 @@ public final class SlidingLineDecoder extends DecoderBase {
             double ceilingMax
             ) {
         super(
+                cfg,
                 tuMillis,
                 framesPerSlice,
                 tsLength,
@@ -170,10 +172,10 @@ public final class SlidingLineDecoder extends DecoderBase {
                 final int toneDistSlices = t2.rise - t1.drop;
 
                 if (toneDistSlices > wordSpaceLimit) {
-                    final int ts = GerkeLib.getFlag(GerkeDecoder.O_TSTAMPS)
+                    final int ts = cfg.timestamps
                             ? offset + (int) Math.round(key * tsLength * tuMillis / 1000)
                             : -1;
-                    formatter.add(true, p.text, ts);
+                    formatter.add(true, p.text, ts, w.secondsFromSliceIndex(lsqToneEnd(prevKey, tones, jDot), framesPerSlice));
                     wpm.chCus += p.nTus;
                     wpm.spCusW += 7;
                     wpm.spTicksW += lsqToneBegin(key, tones, jDot) - lsqToneEnd(prevKey, tones, jDot);
@@ -190,7 +192,7 @@ public final class SlidingLineDecoder extends DecoderBase {
                     lsqPlotHelper(tb);
 
                 } else if (toneDistSlices > charSpaceLimit) {
-                    formatter.add(false, p.text, -1);
+                    formatter.add(false, p.text, -1, w.secondsFromSliceIndex(lsqToneEnd(prevKey, tones, jDot), framesPerSlice));
                     wpm.chCus += p.nTus;
                     wpm.spCusC += 3;
 
@@ -217,7 +219,7 @@ public final class SlidingLineDecoder extends DecoderBase {
         }
 
         if (p != Node.tree) {
-            formatter.add(true, p.text, -1);
+            formatter.add(true, p.text, -1, w.secondsFromSliceIndex(lsqToneEnd(prevKey, tones, jDot), framesPerSlice));
             formatter.newLine();
             wpm.chCus += p.nTus;
             wpm.chTicks += lsqToneEnd(prevKey, tones, jDot) - qCharBegin;
@@ -3,6 +3,7 @@ package st.foglo.gerke_decoder.decoder.sliding_line;
 import java.util.NavigableMap;
 import java.util.TreeMap;
 
+import st.foglo.gerke_decoder.DecoderConfig;
 import st.foglo.gerke_decoder.GerkeDecoder;
 import st.foglo.gerke_decoder.GerkeLib;
 import st.foglo.gerke_decoder.GerkeDecoder.DecoderIndex;
@@ -45,16 +46,12 @@ public final class SlidingLinePlus extends DecoderBase {
     /**
      * Maximum width of a spike; unit is TU
      */
-    private static final double spikeWidth =
-        GerkeLib.getDoubleOptMulti(
-            GerkeDecoder.O_HIDDEN)[HiddenOpts.SPIKE_WIDTH_MAX.ordinal()];
+    private final double spikeWidth;
 
     /**
      * Maximum width of a crack; unit is TU
      */
-    private static final double crackWidth =
-        GerkeLib.getDoubleOptMulti(
-            GerkeDecoder.O_HIDDEN)[HiddenOpts.CRACK_WIDTH_MAX.ordinal()];
+    private final double crackWidth;
 
     private static final double SUPER_LONG_DASH = 6.0;
     private static final double LONG_DASH = 4.5;
@@ -73,12 +70,11 @@ public final class SlidingLinePlus extends DecoderBase {
      * Half-width of the sliding line, expressed as nof. slices
      * This parameter is quite sensitive!
      */
-    final double hw =
-        GerkeLib.getDoubleOptMulti(
-            GerkeDecoder.O_HIDDEN)[HiddenOpts.HALF_WIDTH.ordinal()];
-    final int halfWidth = (int) Math.round( ((double)7/8) * hw/tsLength);
+    final double hw;
+    final int halfWidth;
 
     public SlidingLinePlus(
+            DecoderConfig cfg,
             double tuMillis,
             int framesPerSlice,
             double tsLength,
@@ -96,6 +92,7 @@ public final class SlidingLinePlus extends DecoderBase {
             double ceilingMax
             ) {
         super(
+                cfg,
                 tuMillis,
                 framesPerSlice,
                 tsLength,
@@ -113,6 +110,11 @@ public final class SlidingLinePlus extends DecoderBase {
 
         this.sigSize = sigSize;
         this.level = level;
+
+        this.spikeWidth = cfg.getHiddenDouble(HiddenOpts.SPIKE_WIDTH_MAX);
+        this.crackWidth = cfg.getHiddenDouble(HiddenOpts.CRACK_WIDTH_MAX);
+        this.hw = cfg.getHiddenDouble(HiddenOpts.HALF_WIDTH);
+        this.halfWidth = (int) Math.round( ((double)7/8) * hw/tsLength);
     }
 
     private enum States {LOW, M_HIGH, HIGH, M_LOW};
@@ -145,8 +147,7 @@ public final class SlidingLinePlus extends DecoderBase {
         double aMin = Double.MAX_VALUE;
 
         final boolean breakLongDash =
-                GerkeLib.getIntOptMulti(GerkeDecoder.O_HIDDEN)
-                [HiddenOpts.BREAK_LONG_DASH.ordinal()] == 1;
+                cfg.getHiddenInt(HiddenOpts.BREAK_LONG_DASH) == 1;
 
         // PARA 0.25
         int maxSpike = (int) Math.round(spikeWidth*(tuMillis/1000)*((double) w.frameRate/framesPerSlice));
@@ -328,10 +329,10 @@ public final class SlidingLinePlus extends DecoderBase {
                 }
 
                 if (toneDistSlices > wordSpaceLimit) {
-                    final int ts = GerkeLib.getFlag(GerkeDecoder.O_TSTAMPS)
+                    final int ts = cfg.timestamps
                             ? offset + (int) Math.round(key * tsLength * tuMillis / 1000)
                             : -1;
-                    formatter.add(true, p.text, ts);
+                    formatter.add(true, p.text, ts, w.secondsFromSliceIndex(toneEnd(prevKey, tones), framesPerSlice));
                     wpm.chCus += p.nTus;
                     wpm.spCusW += 7;
                     wpm.spTicksW += toneBegin(key, tones) - toneEnd(prevKey, tones);
@@ -348,7 +349,7 @@ public final class SlidingLinePlus extends DecoderBase {
                     lsqPlotHelper(tb);
 
                 } else if (toneDistSlices > charSpaceLimit) {
-                    formatter.add(false, p.text, -1);
+                    formatter.add(false, p.text, -1, w.secondsFromSliceIndex(toneEnd(prevKey, tones), framesPerSlice));
                     wpm.chCus += p.nTus;
                     wpm.spCusC += 3;
 
@@ -375,7 +376,7 @@ public final class SlidingLinePlus extends DecoderBase {
         }
 
         if (p != Node.tree) {
-            formatter.add(true, p.text, -1);
+            formatter.add(true, p.text, -1, w.secondsFromSliceIndex(toneEnd(prevKey, tones), framesPerSlice));
             formatter.newLine();
             wpm.chCus += p.nTus;
             wpm.chTicks += toneEnd(prevKey, tones) - qCharBegin;
@@ -1,7 +1,7 @@
 package st.foglo.gerke_decoder.decoder.tone_silence;
 
+import st.foglo.gerke_decoder.DecoderConfig;
 import st.foglo.gerke_decoder.GerkeDecoder;
-import st.foglo.gerke_decoder.GerkeLib;
 import st.foglo.gerke_decoder.GerkeDecoder.DecoderIndex;
 import st.foglo.gerke_decoder.GerkeLib.Death;
 import st.foglo.gerke_decoder.decoder.DecoderBase;
@@ -31,6 +31,7 @@ public final class ToneSilenceDecoder extends DecoderBase {
 
 
     public ToneSilenceDecoder(
+            DecoderConfig cfg,
             double tuMillis,
             int framesPerSlice,
             double tsLength,
@@ -47,6 +48,7 @@ public final class ToneSilenceDecoder extends DecoderBase {
             double[] flo
             ) {
         super(
+                cfg,
                 tuMillis,
                 framesPerSlice,
                 tsLength,
@@ -116,13 +118,15 @@ public final class ToneSilenceDecoder extends DecoderBase {
                     qCharBegin = trans[t].q;
                 }
                 else if (trans[t].q - trans[t-1].q > wordSpaceLimit) {
-                    if (GerkeLib.getFlag(GerkeDecoder.O_TSTAMPS)) {
+                    final double tEnd = w.secondsFromSliceIndex(trans[t-1].q, framesPerSlice);
+                    if (cfg.timestamps) {
                         formatter.add(true,
                                 p.text,
-                                offset + (int) Math.round(trans[t].q*tsLength*tuMillis/1000));
+                                offset + (int) Math.round(trans[t].q*tsLength*tuMillis/1000),
+                                tEnd);
                     }
                     else {
-                        formatter.add(true, p.text, -1);
+                        formatter.add(true, p.text, -1, tEnd);
                     }
 
                     wpm.spTicksW += trans[t].q - trans[t-1].q;
@@ -134,7 +138,7 @@ public final class ToneSilenceDecoder extends DecoderBase {
                     p = Node.tree;
                 }
                 else if (trans[t].q - trans[t-1].q > charSpaceLimit) {
-                    formatter.add(false, p.text, -1);
+                    formatter.add(false, p.text, -1, w.secondsFromSliceIndex(trans[t-1].q, framesPerSlice));
 
                     wpm.spTicksC += trans[t].q - trans[t-1].q;
                     wpm.spCusC += 3;
@@ -163,7 +167,7 @@ public final class ToneSilenceDecoder extends DecoderBase {
         }
 
         if (p != Node.tree) {
-            formatter.add(true, p.text, -1);
+            formatter.add(true, p.text, -1, w.secondsFromSliceIndex(trans[transIndex-1].q, framesPerSlice));
             formatter.newLine();
 
             wpm.chTicks += trans[transIndex-1].q - qCharBegin;
@@ -2,20 +2,23 @@ package st.foglo.gerke_decoder.detector;
 
 import java.io.IOException;
 
+import st.foglo.gerke_decoder.DecoderConfig;
 import st.foglo.gerke_decoder.GerkeDecoder;
 import st.foglo.gerke_decoder.GerkeLib.Death;
 import st.foglo.gerke_decoder.wave.Wav;
 
 public abstract class DetectorBase implements CwDetector {
 
+    protected final DecoderConfig cfg;
     protected final Wav w;
     protected final int framesPerSlice; // nof. frames in one slice
     protected final int nofSlices;
     protected final double tsLength;    // time slice is defined as this fraction of TU
     protected final double tuMillis;    // length of a dot in milliseconds
 
-    protected DetectorBase(Wav w, int framesPerSlice, int nofSlices, double tsLength, double tuMillis) {
+    protected DetectorBase(DecoderConfig cfg, Wav w, int framesPerSlice, int nofSlices, double tsLength, double tuMillis) {
         super();
+        this.cfg = cfg;
         this.w = w;
         this.framesPerSlice = framesPerSlice;
         this.nofSlices = nofSlices;
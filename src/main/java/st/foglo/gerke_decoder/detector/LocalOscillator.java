@@ -0,0 +1,60 @@
+package st.foglo.gerke_decoder.detector;
+
+import st.foglo.gerke_decoder.lib.Compute;
+
+/**
+ * Local oscillator for mixing, as sine and cosine tables over exactly
+ * one period. With an integer frequency f and frame rate r the waveform
+ * repeats after r/gcd(f, r) frames, so the tables are exact for any
+ * frame index.
+ *
+ * Typical use is to get a table index once, then step it per frame.
+ */
+public final class LocalOscillator {
+
+    public final int period;        // frames
+
+    private final double[] sines;
+    private final double[] coses;
+
+    public LocalOscillator(int freq, int frameRate, double phaseShift) {
+        this.period = frameRate/gcd(Math.abs(freq), frameRate);
+        this.sines = new double[period];
+        this.coses = new double[period];
+        for (int j = 0; j < period; j++) {
+            // reduce modulo the frame rate in integers to keep the angle exact
+            final long rem = ((long) freq*j) % frameRate;
+            final double angle = (rem*Compute.TWO_PI)/frameRate + phaseShift;
+            sines[j] = Math.sin(angle);
+            coses[j] = Math.cos(angle);
+        }
+    }
+
+    /**
+     * Table index for a non-negative frame index.
+     */
+    public int index(long frame) {
+        return (int) (frame % period);
+    }
+
+    public int next(int j) {
+        return j + 1 == period ? 0 : j + 1;
+    }
+
+    public double sin(int j) {
+        return sines[j];
+    }
+
+    public double cos(int j) {
+        return coses[j];
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            final int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,154 @@
+package st.foglo.gerke_decoder.detector;
+
+import java.util.Arrays;
+
+import st.foglo.gerke_decoder.lib.Compute;
+import st.foglo.gerke_decoder.lib.Fft;
+import st.foglo.gerke_decoder.wave.BlockConsumer;
+
+/**
+ * Averaged periodogram over time slices, gathered in a single sequential
+ * pass. The value for frequency f is the sum over all slices of the
+ * squared amplitude of the slice at f. A trailing incomplete slice is
+ * ignored. Any slice length may be used, such as the chunks of the
+ * adaptive detector.
+ *
+ * Slices are transformed pairwise, as the real and imaginary parts of
+ * one zero-padded FFT. The summed power spectrum is then turned into the
+ * summed autocorrelation of the slices, which gives the periodogram at
+ * any frequency, not only at the FFT bins.
+ *
+ * More blocks may be given after finish(), which is then called again;
+ * this lets the periodogram of a stream be kept up to date.
+ */
+public final class Periodogram implements BlockConsumer {
+
+    final int framesPerSlice;
+    final int frameRate;
+
+    private final Fft fft;
+    private final double[] re;
+    private final double[] im;
+    private final double[] power;
+
+    private int j = 0;                 // frame index within current slice
+    private boolean second = false;    // current slice goes to the imaginary part
+
+    /**
+     * Summed autocorrelation for lags 0 .. framesPerSlice-1, valid after finish().
+     */
+    private double[] acf = null;
+
+    public Periodogram(int framesPerSlice, int frameRate) {
+        this.framesPerSlice = framesPerSlice;
+        this.frameRate = frameRate;
+
+        // zero padding to at least 2*framesPerSlice - 1 avoids circular wrap-around
+        this.fft = new Fft(Fft.sizeFor(2*framesPerSlice));
+        this.re = new double[fft.size];
+        this.im = new double[fft.size];
+        this.power = new double[fft.size];
+    }
+
+    @Override
+    public void accept(short[] block, int n) {
+        for (int i = 0; i < n; i++) {
+            if (second) {
+                im[j] = block[i];
+            }
+            else {
+                re[j] = block[i];
+            }
+            j++;
+            if (j == framesPerSlice) {
+                j = 0;
+                if (second) {
+                    flush();
+                }
+                second = !second;
+            }
+        }
+    }
+
+    /**
+     * Call after the last block, before the periodogram is used.
+     */
+    public void finish() {
+        if (j > 0) {
+            // drop the incomplete slice
+            final double[] part = second ? im : re;
+            for (int k = 0; k < j; k++) {
+                part[k] = 0.0;
+            }
+            j = 0;
+        }
+        if (second) {
+            flush();
+            second = false;
+        }
+
+        // the power spectrum is real and even, so a forward transform
+        // yields the autocorrelation, scaled by the FFT size
+        final int size = fft.size;
+        System.arraycopy(power, 0, re, 0, size);
+        Arrays.fill(im, 0.0);
+        fft.transform(re, im);
+        acf = new double[framesPerSlice];
+        for (int lag = 0; lag < framesPerSlice; lag++) {
+            acf[lag] = re[lag]/size;
+        }
+        Arrays.fill(re, 0.0);
+        Arrays.fill(im, 0.0);
+    }
+
+    /**
+     * Scales the sums by the given factor, so that earlier slices weigh
+     * less than the ones that follow.
+     */
+    public void decay(double factor) {
+        for (int m = 0; m < power.length; m++) {
+            power[m] *= factor;
+        }
+    }
+
+    /**
+     * Spacing of the FFT bins, Hz.
+     */
+    public double binWidth() {
+        return (double) frameRate/fft.size;
+    }
+
+    /**
+     * Same as r2Sum at the frequency of bin m, 0 <= m < FFT size, taken
+     * directly from the summed power spectrum.
+     */
+    public double binR2Sum(int m) {
+        return power[m];
+    }
+
+    /**
+     * Sum over slices of the squared slice amplitude at frequency f.
+     */
+    public double r2Sum(double f) {
+        final double omega = Compute.TWO_PI*f/frameRate;
+        double result = acf[0];
+        for (int lag = 1; lag < framesPerSlice; lag++) {
+            result += 2*acf[lag]*Math.cos(omega*lag);
+        }
+        return result;
+    }
+
+    /**
+     * With z = x + iy, |X[m]|^2 + |Y[m]|^2 = (|Z[m]|^2 + |Z[-m]|^2)/2.
+     */
+    private void flush() {
+        final int size = fft.size;
+        fft.transform(re, im);
+        for (int m = 0; m < size; m++) {
+            final int mr = (size - m) & (size - 1);
+            power[m] += 0.5*(re[m]*re[m] + im[m]*im[m] + re[mr]*re[mr] + im[mr]*im[mr]);
+        }
+        Arrays.fill(re, 0.0);
+        Arrays.fill(im, 0.0);
+    }
+}
@@ -0,0 +1,145 @@
+package st.foglo.gerke_decoder.detector.adaptive;
+
+import st.foglo.gerke_decoder.detector.TrigTable;
+import st.foglo.gerke_decoder.wave.SampleSource;
+
+/**
+ * Signal loss from clipping, for any clip level, from statistics that
+ * are gathered in one pass over the chunks of a segment.
+ *
+ * Clipping at level L changes a sample x with |x| > L by x - sign(x)*L,
+ * so the clipped chunk sum is the unclipped sum minus A - L*B, where A
+ * is the sum of x*e and B the sum of sign(x)*e over the samples above
+ * L, and e is the trig table value. Samples are put in buckets by
+ * magnitude, and per chunk the sums A and B over all buckets from a
+ * given one and up are kept. A probe at level L takes these sums for
+ * the buckets above the one that holds L, and visits the samples in
+ * that bucket only.
+ */
+final class ClipLoss {
+
+    private static final int SHIFT = 7;                               // bucket width is 2^SHIFT
+    private static final int NOF_BUCKETS = (-Short.MIN_VALUE >> SHIFT) + 1;
+
+    final int chunkSize;
+    final int nofChunk;
+    final TrigTable trigTable;
+
+    private final short[] values;        // the samples of the segment
+    private final int[] order;           // sample positions, by bucket
+    private final int[] start;           // start of each bucket in order
+
+    // per chunk and bucket, sums over the samples in that bucket and above
+    private final double[] aSin;
+    private final double[] aCos;
+    private final double[] bSin;
+    private final double[] bCos;
+
+    private final double[] sumSin;       // per chunk, unclipped
+    private final double[] sumCos;
+    private final double sum;            // sum of unclipped chunk amplitudes
+
+    private final double[] clipSin;      // per chunk, work area for probes
+    private final double[] clipCos;
+
+    ClipLoss(SampleSource wav, long base, int chunkSize, int nofChunk, TrigTable trigTable) {
+        this.chunkSize = chunkSize;
+        this.nofChunk = nofChunk;
+        this.trigTable = trigTable;
+
+        final int size = nofChunk*chunkSize;
+        final int stride = NOF_BUCKETS + 1;
+        this.values = new short[size];
+        this.order = new int[size];
+        this.start = new int[NOF_BUCKETS + 1];
+        this.aSin = new double[nofChunk*stride];
+        this.aCos = new double[nofChunk*stride];
+        this.bSin = new double[nofChunk*stride];
+        this.bCos = new double[nofChunk*stride];
+        this.sumSin = new double[nofChunk];
+        this.sumCos = new double[nofChunk];
+        this.clipSin = new double[nofChunk];
+        this.clipCos = new double[nofChunk];
+
+        final int[] count = new int[NOF_BUCKETS];
+        double sum = 0.0;
+        for (int c = 0; c < nofChunk; c++) {
+            final int p0 = c*stride;
+            double s = 0.0;
+            double t = 0.0;
+            for (int i = 0; i < chunkSize; i++) {
+                final short value = wav.get(base + (long) c*chunkSize + i);
+                values[c*chunkSize + i] = value;
+                final double sin = trigTable.sin(i);
+                final double cos = trigTable.cos(i);
+                s += sin*value;
+                t += cos*value;
+
+                final int b = Math.abs((int) value) >> SHIFT;
+                count[b]++;
+                final int sign = value < 0 ? -1 : 1;
+                aSin[p0 + b] += sin*value;
+                aCos[p0 + b] += cos*value;
+                bSin[p0 + b] += sin*sign;
+                bCos[p0 + b] += cos*sign;
+            }
+            sumSin[c] = s;
+            sumCos[c] = t;
+            sum += Math.sqrt(s*s + t*t);
+
+            for (int b = NOF_BUCKETS - 1; b >= 0; b--) {
+                aSin[p0 + b] += aSin[p0 + b + 1];
+                aCos[p0 + b] += aCos[p0 + b + 1];
+                bSin[p0 + b] += bSin[p0 + b + 1];
+                bCos[p0 + b] += bCos[p0 + b + 1];
+            }
+        }
+        this.sum = sum;
+
+        for (int b = 0; b < NOF_BUCKETS; b++) {
+            start[b + 1] = start[b] + count[b];
+        }
+        final int[] next = new int[NOF_BUCKETS];
+        System.arraycopy(start, 0, next, 0, NOF_BUCKETS);
+        for (int k = 0; k < size; k++) {
+            final int b = Math.abs((int) values[k]) >> SHIFT;
+            order[next[b]++] = k;
+        }
+    }
+
+    /**
+     * Returns a number that indicates relative loss of signal content
+     * for the given clip level. The returned value is 0 for large
+     * levels, and increases towards 1 for small levels.
+     */
+    double amount(int clipLevel) {
+        final int b = clipLevel >> SHIFT;
+        final int stride = NOF_BUCKETS + 1;
+
+        // samples in the buckets above b are all clipped
+        for (int c = 0; c < nofChunk; c++) {
+            final int p = c*stride + b + 1;
+            clipSin[c] = sumSin[c] - (aSin[p] - clipLevel*bSin[p]);
+            clipCos[c] = sumCos[c] - (aCos[p] - clipLevel*bCos[p]);
+        }
+
+        // samples in bucket b may be clipped
+        for (int k = start[b]; k < start[b + 1]; k++) {
+            final int pos = order[k];
+            final int value = values[pos];
+            if (value > clipLevel || value < -clipLevel) {
+                final int c = pos/chunkSize;
+                final int i = pos - c*chunkSize;
+                final int excess = value > 0 ? value - clipLevel : value + clipLevel;
+                clipSin[c] -= trigTable.sin(i)*excess;
+                clipCos[c] -= trigTable.cos(i)*excess;
+            }
+        }
+
+        double sumClipped = 0.0;
+        for (int c = 0; c < nofChunk; c++) {
+            sumClipped += Math.sqrt(clipSin[c]*clipSin[c] + clipCos[c]*clipCos[c]);
+        }
+        return 1.0 - sumClipped/sum;
+    }
+}
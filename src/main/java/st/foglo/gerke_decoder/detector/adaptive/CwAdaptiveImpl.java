@@ -1,16 +1,20 @@
 package st.foglo.gerke_decoder.detector.adaptive;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinTask;
 
-import st.foglo.gerke_decoder.GerkeDecoder;
-import st.foglo.gerke_decoder.GerkeLib;
+import st.foglo.gerke_decoder.DecoderConfig;
+import st.foglo.gerke_decoder.GerkeLib.Debug;
 import st.foglo.gerke_decoder.GerkeLib.Info;
 import st.foglo.gerke_decoder.GerkeLib.Warning;
 import st.foglo.gerke_decoder.detector.DetectorBase;
@@ -33,10 +37,13 @@ public final class CwAdaptiveImpl extends DetectorBase {
 
     final int segFactor;              // segment size is segFactor*cohFactor*framesPerSlice
 
-    final LinkedList<Segment> segments = new LinkedList<Segment>();
+    final List<Segment> segments = new ArrayList<Segment>();
 
-    final Map<Double, TrigTable> trigTableMap = new HashMap<Double, TrigTable>();
-    final Set<Double> frequencies = new TreeSet<Double>();  // for diagnostics only
+    /**
+     * Shared by segments that are analyzed in parallel.
+     */
+    final ConcurrentMap<Double, TrigTable> trigTableMap = new ConcurrentHashMap<Double, TrigTable>();
+    final Set<Double> frequencies = new ConcurrentSkipListSet<Double>();  // for diagnostics only
 
     final NavigableSet<Double> strengths = new TreeSet<Double>();
 
@@ -44,7 +51,13 @@ public final class CwAdaptiveImpl extends DetectorBase {
 
     final double strengthMax;
 
+    /**
+     * Interpolated frequency per slice.
+     */
+    final double[] sliceFreq;
+
     public CwAdaptiveImpl(
+            DecoderConfig cfg,
             int nofSlices,
             Wav w,
             double tuMillis,
@@ -53,7 +66,7 @@ public final class CwAdaptiveImpl extends DetectorBase {
             int segFactor,
             double tsLength) {
 
-        super(w, framesPerSlice, nofSlices, tsLength, tuMillis);
+        super(cfg, w, framesPerSlice, nofSlices, tsLength, tuMillis);
 
         this.cohFactor = cohFactor;
         this.segFactor = segFactor;
@@ -61,29 +74,35 @@ public final class CwAdaptiveImpl extends DetectorBase {
         new Info("coherence factor: %d", cohFactor);
         new Info("segment factor: %d", segFactor);
 
-        // analyze segments
+        // analyze segments, in parallel since each one depends on its own frames only
+        final List<SegmentTask> tasks = new ArrayList<SegmentTask>();
         final int segSize = segFactor*cohFactor*framesPerSlice;
-        int base = 0;
+        long base = 0;
         int segIndex = 0;
         for (; ; base += segSize) {
             if (base + segSize > w.nofFrames) {
                 break;
             }
-            final Segment s = new Segment(this, segIndex, w, base, framesPerSlice, cohFactor, segFactor);
+            tasks.add(new SegmentTask(this, cfg, segIndex, w, base, framesPerSlice, cohFactor, segFactor));
             segIndex++;
-            segments.addLast(s);
-            strengths.add(s.strength);
         }
 
         // Would it be better to always create a dangling segment?
         // Currently there are two workarounds for the no-dangling-segment case.
         if (w.nofFrames - base >= framesPerSlice*cohFactor) {
             // create one dangling segment
-            final int nofChunk = (w.nofFrames - base)/(cohFactor*framesPerSlice);
-            final Segment s = new Segment(this, segIndex, w, base, framesPerSlice, cohFactor, nofChunk);
-            segments.addLast(s);
+            final int nofChunk = (int) ((w.nofFrames - base)/(cohFactor*framesPerSlice));
+            tasks.add(new SegmentTask(this, cfg, segIndex, w, base, framesPerSlice, cohFactor, nofChunk));
+        }
+
+        final long tBegin = System.currentTimeMillis();
+        ForkJoinTask.invokeAll(tasks);
+        for (SegmentTask t : tasks) {
+            final Segment s = t.join();
+            segments.add(s);
             strengths.add(s.strength);
         }
+        new Debug("segment analysis took ms: %d", (int) (System.currentTimeMillis() - tBegin));
 
         new Info("nof. segments: %d", segments.size());
 
@@ -98,12 +117,11 @@ public final class CwAdaptiveImpl extends DetectorBase {
                 ++estimateIsLower;
             }
         }
-        final double[] f = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_FRANGE);
         if (4*estimateIsHigher > segments.size()) {
-            new Warning("CW tone frequency may be lower than used estimate (%.0f..%.0f Hz)", f[0], f[1]);
+            new Warning("CW tone frequency may be lower than used estimate (%.0f..%.0f Hz)", cfg.freqLow, cfg.freqHigh);
         }
         else if (4*estimateIsLower > segments.size()) {
-            new Warning("CW tone frequency may be higher than used estimate (%.0f..%.0f Hz)", f[0], f[1]);
+            new Warning("CW tone frequency may be higher than used estimate (%.0f..%.0f Hz)", cfg.freqLow, cfg.freqHigh);
         }
 
         double strengthMax = -1.0;
@@ -123,6 +141,7 @@ public final class CwAdaptiveImpl extends DetectorBase {
         // prepare for linear interpolation
         Segment prevValid = null;
         for (Segment s : segments) {
+            s.prevValid = prevValid;
             if (s.isValid && prevValid != null) {
                 final double slope =
                         (s.bestFrequency - prevValid.bestFrequency)/(s.midpoint - prevValid.midpoint);
@@ -132,21 +151,52 @@ public final class CwAdaptiveImpl extends DetectorBase {
                 prevValid = s;
             }
         }
+        Segment nextValid = null;
+        for (int p = segments.size() - 1; p >= 0; p--) {
+            final Segment s = segments.get(p);
+            if (s.isValid) {
+                nextValid = s;
+            }
+            s.nextValid = nextValid;
+        }
+
+        this.sliceFreq = new double[nofSlices];
+        for (int q = 0; q < nofSlices; q++) {
+            sliceFreq[q] = getFreq((long) q*framesPerSlice);
+        }
     }
 
     @Override
     public Signal getSignal() throws InterruptedException, Exception {
 
-        // compute signal
+        // demodulate once per slice, then smooth the complex slice sums
+        final double[] sliceSin = new double[nofSlices];
+        final double[] sliceCos = new double[nofSlices];
+        demodulate(sliceSin, sliceCos);
 
         final double[] sig = new double[nofSlices];
+        for (int q = 0; q < nofSlices; q++) {
+            sig[q] = getStrength(q, sliceSin, sliceCos);
+        }
 
-        // iterate over slices
+        return new Signal(sig, 0, 0);
+    }
+
+    /**
+     * Clipped complex sum per slice, against a local oscillator that
+     * follows the interpolated frequency track. The oscillator phase is
+     * carried over from slice to slice, so that sums over neighbouring
+     * slices add up coherently. Slice q covers the frames from
+     * q*framesPerSlice and up.
+     */
+    private void demodulate(double[] sliceSin, double[] sliceCos) {
+
+        double phase = 0.0;
         for (int q = 0; q < nofSlices; q++) {
-            final int wavIndex = q*framesPerSlice;
-            final double freq = getFreq(wavIndex);
-            final int segIndex = wavIndex/(segFactor*cohFactor*framesPerSlice);
-            
+            final long wavIndex = (long) q*framesPerSlice;
+            final double u = sliceFreq[q];
+            final int segIndex = (int) (wavIndex/(segFactor*cohFactor*framesPerSlice));
+
             // workaround for the no-dangling-segment case
             final Segment seg;
             if (segIndex >= segments.size()) {
@@ -155,36 +205,44 @@ public final class CwAdaptiveImpl extends DetectorBase {
             else {
                 seg = segments.get(segIndex);
             }
-            
-            sig[q] = getStrength(q, freq, seg.clipLevel);
-        }
+            final int clipLevel = seg.clipLevel;
+
+            final TrigTable trigTable = getTrigTable(u);
+            double sumSin = 0.0;
+            double sumCos = 0.0;
+            for (int k = 0; k < framesPerSlice; k++) {
+                final int frameValueRaw = w.wav.get(wavIndex + k);
+                final int frameValue = frameValueRaw > clipLevel ? clipLevel :
+                    frameValueRaw < -clipLevel ? -clipLevel :
+                        frameValueRaw;
+                sumSin += trigTable.sin(k)*frameValue;
+                sumCos += trigTable.cos(k)*frameValue;
+            }
 
-        return new Signal(sig, 0, 0);
+            // shift by the phase at the start of the slice
+            final double c = Math.cos(phase);
+            final double s = Math.sin(phase);
+            sliceSin[q] = s*sumCos + c*sumSin;
+            sliceCos[q] = c*sumCos - s*sumSin;
+
+            phase = (phase + Compute.TWO_PI*u*framesPerSlice/w.frameRate) % Compute.TWO_PI;
+        }
     }
 
     /**
-     * Return interpolated best frequency
+     * Return interpolated best frequency, using the nearest valid
+     * segments as prepared by the constructor.
      * @param wavIndex
      * @return
      */
-    private double getFreq(int wavIndex) {
+    private double getFreq(long wavIndex) {
 
         // workaround for the no-dangling-segment case
-        final int segIndex0 = wavIndex/(segFactor*cohFactor*framesPerSlice);
+        final int segIndex0 = (int) (wavIndex/(segFactor*cohFactor*framesPerSlice));
         final int segIndex = segIndex0 >= segments.size() ? segIndex0 - 1 : segIndex0;
 
-        Segment s = segments.get(segIndex);
-
-        Segment prev = null;
-        for (int p = segIndex-1; p >= 0; p--) {
-            prev = segments.get(p);
-            if (prev.isValid) {
-                break;
-            }
-            else if (p == 0) {
-                prev = null;
-            }
-        }
+        final Segment s = segments.get(segIndex);
+        final Segment prev = s.prevValid;
 
         // interpolate, with special care about beginning and end
         if (prev != null && (!s.isValid || s.isValid && wavIndex < s.midpoint)) {
@@ -194,74 +252,54 @@ public final class CwAdaptiveImpl extends DetectorBase {
             return s.bestFrequency + s.slopeRight*(wavIndex - s.midpoint);
         }
         else {
-            for (int p = segIndex; true; p++) {
-                final Segment nextValid = segments.get(p);
-                if (nextValid.isValid) {
-                    return nextValid.bestFrequency;
-                }
-            }
+            return s.nextValid.bestFrequency;
         }
     }
 
     /**
-     * Get smoothed signal strength in slice q
+     * Get smoothed signal strength in slice q, as a Gaussian weighted
+     * sum of the complex sums of the surrounding slices.
      */
     private double getStrength(
             int q,                          // slice index
-            double u,                       // frequency
-            int clipLevel)                  // clip level
+            double[] sliceSin,              // complex sums per slice
+            double[] sliceCos)
     {
-        final int hiMax = nofSlices*framesPerSlice;  // hiMax is equal to, or less than, wav array size
-        final int loIndex;
-        final int hiIndex;
-
+        final int hiSlice;
         if (cohFactor % 2 == 0) {
             // Coherence factor is even
-            hiIndex = Compute.iMin(hiMax, (q + cohFactor/2)*framesPerSlice);
+            hiSlice = Compute.iMin(nofSlices, q + cohFactor/2);
         }
         else {
             // Coherence factor is odd
-            hiIndex = Compute.iMin(hiMax, (q + cohFactor/2 + 1)*framesPerSlice);
+            hiSlice = Compute.iMin(nofSlices, q + cohFactor/2 + 1);
         }
-        loIndex = Compute.iMax(0, (q - cohFactor/2)*framesPerSlice);
+        final int loSlice = Compute.iMax(0, q - cohFactor/2);
 
-        final double[] wTab = getWeightTable(loIndex, hiIndex);
-        final int wTabSize = wTab.length;
-
-        final int kMid = loIndex + (hiIndex-loIndex)/2;
+        final double[] wTab = getWeightTable(hiSlice - loSlice);
 
         if (q == nofSlices/2) {
-            new Info("smallest weight in Gaussian smoothing: %f", wTab[wTabSize-1]);
+            new Info("smallest weight in Gaussian smoothing: %f", wTab[0]);
         }
 
-        double sumCosInChunk = 0.0;
-        double sumSinInChunk = 0.0;
+        double sumSin = 0.0;
+        double sumCos = 0.0;
         double sumWeight = 0.0;
-
-        final TrigTable trigTable = getTrigTable(u);
-
-        for (int k = loIndex; k < hiIndex; k++) {
-            final int frameValueRaw = w.wav[k];
-            final int frameValue = frameValueRaw > clipLevel ? clipLevel :
-                frameValueRaw < -clipLevel ? -clipLevel :
-                    frameValueRaw;
-
-            double weight;
-            if ((hiIndex - loIndex) % 2 == 1) {
-                weight = wTab[Compute.iAbs(k - kMid)];
-            }
-            else {
-                weight = k < kMid ? wTab[kMid - k - 1] : wTab[k - kMid];
-            }
-
-            sumSinInChunk += weight*trigTable.sin(k-loIndex)*frameValue;
-            sumCosInChunk += weight*trigTable.cos(k-loIndex)*frameValue;
+        for (int r = loSlice; r < hiSlice; r++) {
+            final double weight = wTab[r - loSlice];
+            sumSin += weight*sliceSin[r];
+            sumCos += weight*sliceCos[r];
             sumWeight += weight;
         }
 
-        return Math.sqrt(sumSinInChunk*sumSinInChunk + sumCosInChunk*sumCosInChunk)/sumWeight;
+        return Math.sqrt(sumSin*sumSin + sumCos*sumCos)/(sumWeight*framesPerSlice);
     }
 
+    /**
+     * Returns a table for u rounded to a multiple of the frequency step.
+     * The table is made for the rounded frequency, so it does not depend
+     * on which caller creates it. Safe for concurrent use.
+     */
     TrigTable getTrigTable(double u) {
 
         final Double uDouble = Double.valueOf(u);
@@ -277,9 +315,9 @@ public final class CwAdaptiveImpl extends DetectorBase {
         final TrigTable result = trigTableMap.get(uIntegral);
         if (result == null) {
             final int chunkSize = framesPerSlice*cohFactor;
-            final TrigTable trigTable = new TrigTable(u, chunkSize, w.frameRate);
-            trigTableMap.put(uIntegral, trigTable);
-            return trigTable;
+            final TrigTable trigTable = new TrigTable(uIntegral, chunkSize, w.frameRate);
+            final TrigTable existing = trigTableMap.putIfAbsent(uIntegral, trigTable);
+            return existing == null ? trigTable : existing;
         }
         else {
             return result;
@@ -287,42 +325,27 @@ public final class CwAdaptiveImpl extends DetectorBase {
     }
 
     /**
-     * Returns a weights table. Computed tables are cached.
+     * Returns a table of weights for the given number of slices, taken
+     * at the slice midpoints. Computed tables are cached.
      */
-    private double[] getWeightTable(int loIndex, int hiIndex) {
+    private double[] getWeightTable(int width) {
 
-        final double[] table = weightTableMap.get(Integer.valueOf(hiIndex-loIndex));
+        final double[] table = weightTableMap.get(Integer.valueOf(width));
 
         if (table != null) {
             return table;
         }
         else {
-            final int wTabSize;
-            if ((hiIndex-loIndex) % 2 == 0) {
-                wTabSize = (hiIndex-loIndex)/2;
-            }
-            else {
-                wTabSize = (hiIndex-loIndex)/2 + 1;
-            }
-
-            final double[] newTable = new double[wTabSize];
+            final double[] newTable = new double[width];
 
-            final double sigma = GerkeLib.getDoubleOpt(GerkeDecoder.O_SIGMA);
+            final double sigma = cfg.sigma;
 
-            if ((hiIndex-loIndex) % 2 == 0) {
-                for (int k = 0; k < wTabSize; k++) {
-                    final double d = k + 0.5;
-                    newTable[k] = Math.exp(-Compute.squared(1000*d/(tuMillis*w.frameRate*sigma)));
-                }
-            }
-            else {
-                for (int k = 0; k < wTabSize; k++) {
-                    final int d = k;
-                    newTable[k] = Math.exp(-Compute.squared(1000*d/(tuMillis*w.frameRate*sigma)));
-                }
+            for (int r = 0; r < width; r++) {
+                final double d = (r - 0.5*(width - 1))*framesPerSlice;
+                newTable[r] = Math.exp(-Compute.squared(1000*d/(tuMillis*w.frameRate*sigma)));
             }
 
-            weightTableMap.put(Integer.valueOf(hiIndex-loIndex), newTable);
+            weightTableMap.put(Integer.valueOf(width), newTable);
             return newTable;
         }
     }
@@ -338,7 +361,7 @@ public final class CwAdaptiveImpl extends DetectorBase {
     @Override
     public void frequencyStabilityPlot() throws IOException, InterruptedException {
 
-        final PlotEntries pEnt = new PlotEntries(w);
+        final PlotEntries pEnt = new PlotEntries(w, cfg);
 
         final PlotCollector pc = new PlotCollector();
 
@@ -349,8 +372,8 @@ public final class CwAdaptiveImpl extends DetectorBase {
                 break;
             }
             else if (t >= pEnt.plotBegin && t <= pEnt.plotEnd) {
-                int wavIndex = w.wavIndexFromSeconds(t);
-                if (wavIndex >= w.wav.length) {
+                long wavIndex = w.wavIndexFromSeconds(t);
+                if (wavIndex >= w.nofFrames) {
                     break;
                 }
                 double frequency = getFreq(wavIndex);
@@ -379,7 +402,7 @@ public final class CwAdaptiveImpl extends DetectorBase {
             double[] flo,
             double[] cei) throws IOException, InterruptedException {
 
-        final PlotEntries pEnt = new PlotEntries(w);
+        final PlotEntries pEnt = new PlotEntries(w, cfg);
 
         double angleOffsetPrev = 0.0;
         double angleOffset = 0.0;
@@ -398,7 +421,7 @@ public final class CwAdaptiveImpl extends DetectorBase {
                     firstLap = false;
                 }
                 else {
-                    final double f = getFreq(q*framesPerSlice);
+                    final double f = sliceFreq[q];
 
                     angleOffset = angleOffsetPrev + Compute.TWO_PI*f*(timeSeconds - tPrev);
                     angleOffset -= Math.round(angleOffset/Compute.TWO_PI)*Compute.TWO_PI;
@@ -410,10 +433,11 @@ public final class CwAdaptiveImpl extends DetectorBase {
                     double sumSin = 0.0;
                     double sumCos = 0.0;
                     for (int k = 0; k < framesPerSlice*cohFactor; k++) {
-                        final int wavIndex = k + q*framesPerSlice;
+                        final long wavIndex = k + (long) q*framesPerSlice;
                         final double tIncr = ((double) k)/w.frameRate;
-                        sumSin += Math.sin(angleOffset + Compute.TWO_PI*f*tIncr)*w.wav[wavIndex];
-                        sumCos += Math.cos(angleOffset + Compute.TWO_PI*f*tIncr)*w.wav[wavIndex];
+                        final short wavValue = w.wav.get(wavIndex);
+                        sumSin += Math.sin(angleOffset + Compute.TWO_PI*f*tIncr)*wavValue;
+                        sumCos += Math.cos(angleOffset + Compute.TWO_PI*f*tIncr)*wavValue;
                     }
                     final double p = Math.atan2(sumSin, sumCos);
 
@@ -1,11 +1,12 @@
 package st.foglo.gerke_decoder.detector.adaptive;
 
-import st.foglo.gerke_decoder.GerkeDecoder;
+import st.foglo.gerke_decoder.DecoderConfig;
 import st.foglo.gerke_decoder.GerkeLib;
 import st.foglo.gerke_decoder.GerkeDecoder.HiddenOpts;
-import st.foglo.gerke_decoder.GerkeLib.Debug;
 import st.foglo.gerke_decoder.GerkeLib.Trace;
+import st.foglo.gerke_decoder.detector.Periodogram;
 import st.foglo.gerke_decoder.detector.TrigTable;
+import st.foglo.gerke_decoder.lib.Compute;
 import st.foglo.gerke_decoder.wave.Wav;
 
 final class Segment {
@@ -13,6 +14,7 @@ final class Segment {
     static final double FREQ_PREC = 0.2;
 
     final CwAdaptiveImpl parent;
+    final DecoderConfig cfg;
     final int segIndex;
 
     final Wav w;
@@ -22,8 +24,8 @@ final class Segment {
     /**
      * Base and midpoint are indexes into the wav file.
      */
-    final int base;
-    final int midpoint;
+    final long base;
+    final long midpoint;
 
     final int cohFactor;
 
@@ -43,6 +45,13 @@ final class Segment {
 
     double slopeRight = 0.0;
 
+    /**
+     * Nearest valid segment before this one, and nearest valid segment
+     * from this one on; set once validity is known.
+     */
+    Segment prevValid = null;
+    Segment nextValid = null;
+
     int badEstimate = 0;    // -1 if estimate is lower than actual tone, +1 if higher
 
     public boolean isValid() {
@@ -55,9 +64,10 @@ final class Segment {
 
     final short clipLevel;
 
-    public Segment(CwAdaptiveImpl parent, int segIndex,
-            Wav w, int base, int framesPerSlice, int cohFactor, int nofChunk) {
+    public Segment(CwAdaptiveImpl parent, DecoderConfig cfg, int segIndex,
+            Wav w, long base, int framesPerSlice, int cohFactor, int nofChunk) {
         this.parent = parent;
+        this.cfg = cfg;
         this.segIndex = segIndex;
 
         this.w = w;
@@ -74,15 +84,16 @@ final class Segment {
         this.size = framesPerSlice*cohFactor*nofChunk;
         this.midpoint = base + (size % 2 == 1 ? size/2 : size/2 - 1);
 
-        final double[] f = GerkeLib.getDoubleOptMulti(GerkeDecoder.O_FRANGE);
+        final double fLow = cfg.freqLow;
+        final double fHigh = cfg.freqHigh;
 
         final short maxAbsValue = maxAbsValue();
         if (maxAbsValue == 0) {
-            this.bestFrequency = 0.5 * (f[0] + f[1]);
+            this.bestFrequency = 0.5 * (fLow + fHigh);
             this.strength = 0.0;
             this.clipLevel = 1;
         } else {
-            this.bestFrequency = bestFrequency(this, f[0], f[1], FREQ_PREC);
+            this.bestFrequency = bestFrequency(this, fLow, fHigh, FREQ_PREC);
             this.clipLevel = clipLevelInSegment(maxAbsValue);
             new Trace("clip level in segment: %d", clipLevel);
             this.strength = sumOverSegment(bestFrequency, this.clipLevel);
@@ -95,7 +106,7 @@ final class Segment {
     private short maxAbsValue() {
         short result = 0;
         for (int k = 0; k < size; k++) {
-            final short value = w.wav[base + k];
+            final short value = w.wav.get(base + k);
 
             if (value > result) {
                 result = value;
@@ -113,65 +124,42 @@ final class Segment {
     /**
      * Computes a clip level for the segment, depending on
      * the segment bestFrequency value and the acceptable loss
-     * hidden parameter.
+     * hidden parameter. The level is the lowest one with a loss that
+     * is acceptable, found by bisection; the loss is evaluated from
+     * statistics that are gathered in one pass.
      */
     private short clipLevelInSegment(short maxAbsValue) {
 
-        final double clipLevelHigh = maxAbsValue;
-
-        // Reduce cliplevel until some clipping starts to occur
+        final double acceptableLoss = cfg.getHiddenDouble(HiddenOpts.CLIP_DEPTH);
 
-        final double acceptableLoss =
-                GerkeLib.getDoubleOptMulti(
-                    GerkeDecoder.O_HIDDEN)[HiddenOpts.CLIP_DEPTH.ordinal()];
+        final ClipLoss clipLoss = new ClipLoss(w.wav, base, framesPerSlice*cohFactor, nofChunk,
+                parent.getTrigTable(bestFrequency));
 
-        for (double x = clipLevelHigh; true; x *= 0.7) {
-            final double lossAmount = signalLossAmount(x);
-            if (lossAmount > acceptableLoss) {
-                for (double y = 1.05*x; true; y *= 1.05) {
-                    final double lossAmountInner = signalLossAmount(y);
-                    if (lossAmountInner <= acceptableLoss) {
-                        new Trace("[%d] accepted clip level: % f, amount: %f", segIndex, y, lossAmountInner);
-                        return (short) Math.round(y);
-                    }
-                }
+        // there is no loss at the highest level, and all is lost at level 0
+        int lo = 0;
+        int hi = maxAbsValue;
+        double lossAmount = 0.0;
+        while (hi - lo > 1) {
+            final int mid = (lo + hi)/2;
+            final double lossAmountMid = clipLoss.amount(mid);
+            if (lossAmountMid > acceptableLoss) {
+                lo = mid;
             }
-        }
-    }
-
-    /**
-     * Returns a number that indicates relative loss of signal content
-     * for a given clipping level x. The returned value is 0 for large
-     * values of x, and increases towards 1 for small values of x.
-     */
-    private double signalLossAmount(double x) {
-        final int chunkSize = framesPerSlice * cohFactor;
-        final int clipLevel = (int) Math.round(x);
-        double sumClipped = 0.0;
-        double sum = 0.0;
-        final TrigTable trigTable = parent.getTrigTable(bestFrequency);
-        for (int k = 0; k < nofChunk; k++) { // iterate over chunks
-            double sumSin = 0.0;
-            double sumCos = 0.0;
-            double sumSinClipped = 0.0;
-            double sumCosClipped = 0.0;
-            for (int i = 0; i < chunkSize; i++) {
-                final int wIndex = base + k*chunkSize + i;
-                final int wRaw = w.wav[wIndex];
-                final int wClipped = wRaw > clipLevel ? clipLevel : wRaw < -clipLevel ? -clipLevel : wRaw;
-                sumSin += trigTable.sin(i)*wRaw;
-                sumCos += trigTable.cos(i)*wRaw;
-                sumSinClipped += trigTable.sin(i)*wClipped;
-                sumCosClipped += trigTable.cos(i)*wClipped;
+            else {
+                hi = mid;
+                lossAmount = lossAmountMid;
             }
-            sum += Math.sqrt(sumSin*sumSin + sumCos*sumCos);
-            sumClipped += Math.sqrt(sumSinClipped*sumSinClipped + sumCosClipped*sumCosClipped);
         }
-        return 1.0 - sumClipped/sum;
+        new Trace("[%d] accepted clip level: %.0f, amount: %f", segIndex, hi, lossAmount);
+        return (short) hi;
     }
 
     /**
-     * Estimate the signal frequency, using golden-section search.
+     * Estimate the signal frequency. The spectra of the chunks are
+     * gathered in one pass. The FFT bin in the range u to v with the
+     * greatest periodogram value is refined by parabolic interpolation of
+     * the periodogram, at narrower spacings until the spacing is below
+     * prec.
      *
      * @param u
      * @param v
@@ -180,125 +168,67 @@ final class Segment {
      */
     private double bestFrequency(Segment segment, double u, double v, double prec) {
 
-        final int zoomIn = 20;  // search for an approximate maximum over this many frequency steps
-
-        double[] uu = new double[zoomIn + 1];
-        double[] ee = new double[zoomIn + 1];
-
-        double eMax = 0;
-        int jMax = 0;
-        for (int j = 0; j <= zoomIn; j++) {
-            uu[j] = u + j*((v-u)/zoomIn);
-            ee[j] = sumOverSegment(uu[j]);
-            if (ee[j] > eMax) {
-                eMax = ee[j];
-                jMax = j;
+        final int chunkSize = framesPerSlice*cohFactor;
+        final Periodogram periodogram = new Periodogram(chunkSize, w.frameRate);
+        final short[] block = new short[chunkSize];
+        for (int i = 0; i < nofChunk; i++) {
+            for (int k = 0; k < chunkSize; k++) {
+                block[k] = w.wav.get(base + i*chunkSize + k);
+            }
+            periodogram.accept(block, chunkSize);
+        }
+        periodogram.finish();
+
+        final double binWidth = periodogram.binWidth();
+        // bins that cover the range, with at least one bin inside
+        final int mLow = Compute.iMax(1, (int) Math.floor(u/binWidth));
+        final int mHigh = Compute.iMin(
+                Compute.iMax(mLow + 2, (int) Math.ceil(v/binWidth)),
+                (int) Math.floor(w.frameRate/(2*binWidth)) - 1);
+
+        double eMax = -1.0;
+        int mMax = mLow;
+        for (int m = mLow; m <= mHigh; m++) {
+            final double e = periodogram.binR2Sum(m);
+            if (e > eMax) {
+                eMax = e;
+                mMax = m;
             }
         }
 
-        double u1;
-        double u3;
-
-        if (jMax == 0) {
+        if (mMax == mLow) {
             segment.badEstimate = +1;
-            u1 = uu[jMax];
-            u3 = uu[jMax+1];
+            mMax++;
         }
-        else if (jMax == zoomIn) {
+        else if (mMax == mHigh) {
             segment.badEstimate = -1;
-            u1 = uu[jMax-1];
-            u3 = uu[jMax];
+            mMax--;
         }
-        else {
-            u1 = uu[jMax-1];
-            u3 = uu[jMax+1];
-        }
-
-        final double phi = (1 + Math.sqrt(5))/2;
-
-        double u2 = u1 + (1/(1 + phi))*(u3-u1);
-
-        double e1 = sumOverSegment(u1);
-        double e3 = sumOverSegment(u3);
-        double e2 = sumOverSegment(u2);
-
-        double u4;
-        double e4;
 
-        double uPrev = u3 - u1;
-
-        for (int i = 0; true; i++) {
-
-            if (u3-u1 < prec) {
-                return (u1+u3)/2;
+        double f = mMax*binWidth;
+        double h = binWidth;
+        double e1 = periodogram.binR2Sum(mMax - 1);
+        double e2 = periodogram.binR2Sum(mMax);
+        double e3 = periodogram.binR2Sum(mMax + 1);
+        final boolean trace = GerkeLib.isEnabled(GerkeLib.TRACE);
+        for (;;) {
+            final double denom = e1 - 2*e2 + e3;
+            final double delta = denom < 0.0 ? 0.5*h*(e1 - e3)/denom : 0.0;
+            f += Compute.dMax(-h, Compute.dMin(h, delta));
+            if (trace) {
+                new Trace("[%d] frequency: %.2f, spacing: %.2f", segIndex, f, h);
             }
 
-            // have 3 points: u1 u2 u3
-
-            // get 4th point, depending on positions
-
-            if (u2-u1 < u3-u2) {
-                u4 = u3 - (u2-u1);
-                e4 = sumOverSegment(u4);
-                new Trace("A %2d   %.2f(%.1f)  %.2f(%.1f)  %.2f(%.1f)", i, e1, u1, e4, u4, e3, u3);
-                // points are now u1 u2 u4 u3
-                if ((e2 >= e1 && e2 >= e4 && e2 >= e3) || (e1 >= e2 && e1 >= e4 && e1 >= e3)) {
-                    // select left
-                    u3 = u4; e3 = e4;
-                }
-                else {
-                    // select right
-                    u1 = u2; e1 = e2;
-                    u2 = u4; e2 = e4;
-                }
-            }
-            else {
-                u4 = u1 + (u3-u2);
-                e4 = sumOverSegment(u4);
-                new Trace("B %2d   %.2f(%.1f)  %.2f(%.1f)  %.2f(%.1f)", i, e1, u1, e4, u4, e3, u3);
-                // points are now u1 u4 u2 u3
-                if ((e2 >= e1 && e2 >= e4 && e2 >= e3) || (e3 >= e2 && e3 >= e4 && e3 >= e1)) {
-                    // select right
-                    u1 = u4; e1 = e4;
-                }
-                else {
-                    // select left
-                    u3 = u2; e3 = e2;
-                    u2 = u4; e2 = e4;
-                }
-            }
-            if (!(u3-u1 < uPrev && u1 < u2 && u2 < u3)) {
-                new Debug("internal confusion");
+            h /= 4; // PARAMETER, spacing reduction per step
+            if (h < prec) {
+                return Compute.dMax(u, Compute.dMin(v, f));
             }
+            e1 = periodogram.r2Sum(f - h);
+            e2 = periodogram.r2Sum(f);
+            e3 = periodogram.r2Sum(f + h);
         }
     }
 
-    /**
-     * Sum signal over entire segment, trying frequency u
-     * @param u
-     * @return
-     */
-    private double sumOverSegment(double u) {
-
-        double result = 0.0;
-        int chunkSize = framesPerSlice*cohFactor;
-
-        for (int i = 0; i < size/chunkSize; i++) {    // i is a chunk index
-            double sumCosInChunk = 0.0;
-            double sumSinInChunk = 0.0;
-
-            final TrigTable trigTable = parent.getTrigTable(u);
-            for (int k = 0; k < chunkSize; k++) {     // sum in chunk
-                final int wIndex = base + i*chunkSize + k;
-                sumSinInChunk += trigTable.sin(k)*w.wav[wIndex];
-                sumCosInChunk += trigTable.cos(k)*w.wav[wIndex];
-            }
-            result += Math.sqrt(sumSinInChunk*sumSinInChunk + sumCosInChunk*sumCosInChunk)/chunkSize;
-
-        }
-        return result/nofChunk;
-    }
-
     /**
      * Sum clipped signal over entire segment, trying frequency u
      * @param u
@@ -315,17 +245,18 @@ final class Segment {
 
             final TrigTable trigTable = parent.getTrigTable(u);
             for (int k = 0; k < chunkSize; k++) {     // sum in chunk
-                final int wIndex = base + i*chunkSize + k;
+                final long wIndex = base + i*chunkSize + k;
 
+                final short wavRaw = w.wav.get(wIndex);
                 final short wavValue;
-                if (w.wav[wIndex] > clipLevel) {
+                if (wavRaw > clipLevel) {
                     wavValue = clipLevel;
                 }
-                else if ((int)w.wav[wIndex] < -1*((int)clipLevel)) {
+                else if ((int)wavRaw < -1*((int)clipLevel)) {
                     wavValue = (short) (-1*((int)clipLevel));
                 }
                 else {
-                    wavValue = w.wav[wIndex];
+                    wavValue = wavRaw;
                 }
                 sumSinInChunk += trigTable.sin(k)*wavValue;
                 sumCosInChunk += trigTable.cos(k)*wavValue;
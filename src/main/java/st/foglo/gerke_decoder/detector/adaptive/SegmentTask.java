@@ -0,0 +1,40 @@
+package st.foglo.gerke_decoder.detector.adaptive;
+
+import java.util.concurrent.RecursiveTask;
+
+import st.foglo.gerke_decoder.DecoderConfig;
+import st.foglo.gerke_decoder.wave.Wav;
+
+/**
+ * Analyzes one segment, as one task in a fork-join pool.
+ */
+final class SegmentTask extends RecursiveTask<Segment> {
+
+    private static final long serialVersionUID = 1L;
+
+    final CwAdaptiveImpl parent;
+    final DecoderConfig cfg;
+    final int segIndex;
+    final Wav w;
+    final long base;
+    final int framesPerSlice;
+    final int cohFactor;
+    final int nofChunk;
+
+    SegmentTask(CwAdaptiveImpl parent, DecoderConfig cfg, int segIndex,
+            Wav w, long base, int framesPerSlice, int cohFactor, int nofChunk) {
+        this.parent = parent;
+        this.cfg = cfg;
+        this.segIndex = segIndex;
+        this.w = w;
+        this.base = base;
+        this.framesPerSlice = framesPerSlice;
+        this.cohFactor = cohFactor;
+        this.nofChunk = nofChunk;
+    }
+
+    @Override
+    protected Segment compute() {
+        return new Segment(parent, cfg, segIndex, w, base, framesPerSlice, cohFactor, nofChunk);
+    }
+}
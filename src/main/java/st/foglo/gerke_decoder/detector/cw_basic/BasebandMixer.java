@@ -0,0 +1,241 @@
+package st.foglo.gerke_decoder.detector.cw_basic;
+
+import st.foglo.gerke_decoder.LowpassFilter;
+import st.foglo.gerke_decoder.GerkeLib.Info;
+import st.foglo.gerke_decoder.detector.LocalOscillator;
+import st.foglo.gerke_decoder.lib.Compute;
+import st.foglo.gerke_decoder.wave.BlockConsumer;
+
+/**
+ * Clips, mixes to complex baseband, decimates and lowpass filters the I
+ * and Q components in one sequential pass. Frames are handled block by
+ * block: each block is clipped, mixed and decimated once into two small
+ * buffers, which are then filtered in place by the block method of the I
+ * and Q filters. The filters must be designed for the decimated rate.
+ *
+ * Decimation by d is a second order CIC stage, which is a triangular FIR
+ * of length 2d-1 evaluated once per d frames. Per period of d frames,
+ * the sum S and the sum U of the running sums are kept. The frame at
+ * position p = 0 .. d-1 in the period gets weight d-p in U, so the output
+ * at the end of a period, with weights p+1 in the current period and
+ * d-1-p in the preceding one, is
+ *
+ *   ((d+1)*S - U) + (U' - S')
+ *
+ * where S' and U' are the sums of the preceding period, scaled by 1/d^2.
+ * Nothing is integrated over the whole recording, so there is no drift.
+ * With d = 1 the frames pass unchanged.
+ *
+ * The result is the magnitude of the filtered baseband signal, taken at
+ * the last frame of each time slice. Slice q ends at frame q*framesPerSlice,
+ * and the filters are reset right after each slice ends. Period ends are
+ * at multiples of d, and d must divide the slice length.
+ *
+ * If a frequency track is given, the decimated samples are rotated by the
+ * track before filtering, so that the filters follow a drifting tone.
+ */
+final class BasebandMixer implements BlockConsumer {
+
+    final LowpassFilter filterI;
+    final LowpassFilter filterQ;
+    final LocalOscillator lo;
+    final int framesPerSlice;
+    final int clipLevel;
+    final int decimation;
+    final FrequencyTrack track;
+
+    private final double scale;
+    private final int step;               // decimated samples per slice
+
+    private final double[] mag;
+    private final double[] outI;
+    private final double[] outQ;
+    private final int firstSlice;         // slices before this one are not stored
+    private final long lastFrame;         // end of the last slice to store
+
+    private double[] bufI = new double[0];
+    private double[] bufQ = new double[0];
+
+    private long frame;                   // index of the first frame in the next block
+    private int j;                        // oscillator index
+    private int q;                        // next slice to end
+
+    private int p;                        // position in the current decimation period
+    private double sumI = 0.0;
+    private double sumQ = 0.0;
+    private double rampI = 0.0;           // sums of running sums
+    private double rampQ = 0.0;
+    private double prevSumI = 0.0;
+    private double prevSumQ = 0.0;
+    private double prevRampI = 0.0;
+    private double prevRampQ = 0.0;
+
+    /**
+     * Mixer for all slices, to be fed from frame 0.
+     */
+    BasebandMixer(
+            LowpassFilter filterI,
+            LowpassFilter filterQ,
+            int framesPerSlice,
+            int clipLevel,
+            int freq,
+            int frameRate,
+            int decimation,
+            FrequencyTrack track,
+            double[] mag,
+            double[] outI,
+            double[] outQ) {
+        this(filterI, filterQ, framesPerSlice, clipLevel, new LocalOscillator(freq, frameRate, 0.0),
+                decimation, track, mag, outI, outQ, 0L, 0, mag.length);
+        new Info("sine table size: %d", lo.period);
+    }
+
+    /**
+     * Mixer for slices firstSlice to endSlice-1, to be fed from the given
+     * frame. Frames before the first stored slice only serve to settle
+     * the filters. The first frame must be 0 or start a decimation period.
+     * The filtered I and Q per slice are also stored in outI and outQ,
+     * unless these are null. The track may be null.
+     */
+    BasebandMixer(
+            LowpassFilter filterI,
+            LowpassFilter filterQ,
+            int framesPerSlice,
+            int clipLevel,
+            LocalOscillator lo,
+            int decimation,
+            FrequencyTrack track,
+            double[] mag,
+            double[] outI,
+            double[] outQ,
+            long firstFrame,
+            int firstSlice,
+            int endSlice) {
+        this.filterI = filterI;
+        this.filterQ = filterQ;
+        this.lo = lo;
+        this.framesPerSlice = framesPerSlice;
+        this.clipLevel = clipLevel;
+        this.decimation = decimation;
+        this.track = track;
+        this.scale = 1.0/((double) decimation*decimation);
+        this.step = framesPerSlice/decimation;
+        this.mag = mag;
+        this.outI = outI;
+        this.outQ = outQ;
+        this.firstSlice = firstSlice;
+        this.lastFrame = (long) (endSlice - 1)*framesPerSlice;
+        this.frame = firstFrame;
+        this.j = lo.index(firstFrame);
+        this.q = (int) ((firstFrame + framesPerSlice - 1)/framesPerSlice);
+
+        // period m covers frames (m-1)*d+1 to m*d, so frame 0 is last in its period
+        this.p = (int) ((firstFrame + decimation - 1) % decimation);
+    }
+
+    @Override
+    public void accept(short[] block, int n) {
+
+        final int m = (int) Math.min(n, lastFrame + 1 - frame);
+        if (m <= 0) {
+            return;
+        }
+        if (bufI.length < m/decimation + 1) {
+            bufI = new double[m/decimation + 1];
+            bufQ = new double[m/decimation + 1];
+        }
+
+        // the state is kept in locals while a block is processed
+        int k = 0;                        // nof. decimated samples in this block
+        int jj = j;
+        int pp = p;
+        double sI = sumI;
+        double sQ = sumQ;
+        double rI = rampI;
+        double rQ = rampQ;
+        for (int i = 0; i < m; ) {
+            final int end = Compute.iMin(m, i + decimation - pp);
+            for (; i < end; i++) {
+                final int ampRaw = block[i];
+                final int amp = ampRaw < 0 ? Compute.iMax(-clipLevel, ampRaw) : Compute.iMin(clipLevel, ampRaw);
+                final double x = amp*lo.sin(jj);
+                final double y = amp*lo.cos(jj);
+                jj = lo.next(jj);
+                sI += x;
+                sQ += y;
+                rI += sI;
+                rQ += sQ;
+                pp++;
+            }
+            if (pp == decimation) {
+                bufI[k] = (((decimation + 1)*sI - rI) + (prevRampI - prevSumI))*scale;
+                bufQ[k] = (((decimation + 1)*sQ - rQ) + (prevRampQ - prevSumQ))*scale;
+                k++;
+                prevSumI = sI;
+                prevSumQ = sQ;
+                prevRampI = rI;
+                prevRampQ = rQ;
+                sI = 0.0;
+                sQ = 0.0;
+                rI = 0.0;
+                rQ = 0.0;
+                pp = 0;
+            }
+        }
+        j = jj;
+        p = pp;
+        sumI = sI;
+        sumQ = sQ;
+        rampI = rI;
+        rampQ = rQ;
+
+        // the first decimated sample is from the first period end in the block
+        final long firstPeriodEnd = ((frame + decimation - 1)/decimation)*decimation;
+        if (track != null) {
+            track.derotate(bufI, bufQ, k, firstPeriodEnd/decimation);
+        }
+
+        // position in the decimated buffer of the first slice end
+        final int first = (int) (((long) q*framesPerSlice - firstPeriodEnd)/decimation);
+
+        // filter in place, in segments that end where slices end,
+        // since the filters are reset there; I is stored as is, and
+        // combined with Q into the magnitude below
+        for (int i = 0, end = first, r = q; i < k; ) {
+            final int len = Math.min(end + 1, k) - i;
+            filterI.filter(bufI, i, len, bufI);
+            i += len;
+            if (i == end + 1) {
+                if (r >= firstSlice) {
+                    mag[r] = bufI[end];
+                    if (outI != null) {
+                        outI[r] = bufI[end];
+                    }
+                }
+                r++;
+                filterI.reset();
+                end += step;
+            }
+        }
+
+        for (int i = 0, end = first; i < k; ) {
+            final int len = Math.min(end + 1, k) - i;
+            filterQ.filter(bufQ, i, len, bufQ);
+            i += len;
+            if (i == end + 1) {
+                if (q >= firstSlice) {
+                    final double valueI = mag[q];
+                    mag[q] = Math.sqrt(valueI*valueI + bufQ[end]*bufQ[end]);
+                    if (outQ != null) {
+                        outQ[q] = bufQ[end];
+                    }
+                }
+                q++;
+                filterQ.reset();
+                end += step;
+            }
+        }
+
+        frame += m;
+    }
+}
@@ -0,0 +1,40 @@
+package st.foglo.gerke_decoder.detector.cw_basic;
+
+import java.util.concurrent.RecursiveAction;
+
+import st.foglo.gerke_decoder.wave.SampleSource;
+
+/**
+ * Feeds a range of frames to a mixer of its own, as one task in a
+ * fork-join pool.
+ */
+final class BasebandShard extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int BLOCK_SIZE = 4096;
+
+    final SampleSource wav;
+    final BasebandMixer mixer;
+    final long fromFrame;
+    final long toFrame;         // exclusive
+
+    BasebandShard(SampleSource wav, BasebandMixer mixer, long fromFrame, long toFrame) {
+        this.wav = wav;
+        this.mixer = mixer;
+        this.fromFrame = fromFrame;
+        this.toFrame = toFrame;
+    }
+
+    @Override
+    protected void compute() {
+        final short[] block = new short[BLOCK_SIZE];
+        for (long k = fromFrame; k < toFrame; k += BLOCK_SIZE) {
+            final int n = (int) Math.min(BLOCK_SIZE, toFrame - k);
+            for (int i = 0; i < n; i++) {
+                block[i] = wav.get(k + i);
+            }
+            mixer.accept(block, n);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package st.foglo.gerke_decoder.detector.cw_basic;
+
+import st.foglo.gerke_decoder.detector.TrigTable;
+import st.foglo.gerke_decoder.wave.BlockConsumer;
+
+/**
+ * Computes the clipped signal average at one frequency for several clip
+ * levels in a single sequential pass. A trailing incomplete slice is
+ * ignored.
+ *
+ * Clipping a sample x at level c subtracts sign(x)*(|x| - c) when |x| > c.
+ * Per slice, samples are binned by how many levels they exceed, and the
+ * sums of sign(x) and x times the trig table are kept per bin. Suffix sums
+ * over the bins then give the clipped slice amplitude at every level.
+ */
+final class ClipScan implements BlockConsumer {
+
+    final int framesPerSlice;
+    final TrigTable trigTable;
+
+    final int[] levels;             // ascending
+
+    /**
+     * Maps |x| to the nof. levels that are less than |x|.
+     */
+    private final int[] binOf = new int[-(int) Short.MIN_VALUE + 1];
+
+    private final double[] signSin;
+    private final double[] signCos;
+    private final double[] ampSin;
+    private final double[] ampCos;
+
+    private final double[] clipped;    // per level, sum over slices of clipped amplitude
+    private final double[] unclipped;  // per bin, sum over slices not clipped above that bin
+
+    private double xSin = 0.0;
+    private double xCos = 0.0;
+    private int maxBin = 0;
+
+    private int j = 0;                 // frame index within current slice
+    private long nofSlices = 0;
+
+    ClipScan(int f, int framesPerSlice, int frameRate, int[] levels) {
+        this.framesPerSlice = framesPerSlice;
+        this.trigTable = new TrigTable(f, framesPerSlice, frameRate);
+        this.levels = levels;
+
+        for (int a = 0, b = 0; a < binOf.length; a++) {
+            while (b < levels.length && levels[b] < a) {
+                b++;
+            }
+            binOf[a] = b;
+        }
+
+        this.signSin = new double[levels.length + 1];
+        this.signCos = new double[levels.length + 1];
+        this.ampSin = new double[levels.length + 1];
+        this.ampCos = new double[levels.length + 1];
+        this.clipped = new double[levels.length];
+        this.unclipped = new double[levels.length + 1];
+    }
+
+    @Override
+    public void accept(short[] block, int n) {
+        for (int i = 0; i < n; i++) {
+            final int x = block[i];
+            final double sin = trigTable.sin(j);
+            final double cos = trigTable.cos(j);
+            xSin += sin*x;
+            xCos += cos*x;
+
+            final int b = binOf[x < 0 ? -x : x];
+            if (b > 0) {
+                if (x < 0) {
+                    signSin[b] -= sin;
+                    signCos[b] -= cos;
+                }
+                else {
+                    signSin[b] += sin;
+                    signCos[b] += cos;
+                }
+                ampSin[b] += sin*x;
+                ampCos[b] += cos*x;
+                if (b > maxBin) {
+                    maxBin = b;
+                }
+            }
+
+            j++;
+            if (j == framesPerSlice) {
+                endOfSlice();
+            }
+        }
+    }
+
+    private void endOfSlice() {
+
+        // levels from maxBin and up do not clip this slice
+        final double r = Math.sqrt(xSin*xSin + xCos*xCos)/framesPerSlice;
+        unclipped[maxBin] += framesPerSlice*r;
+
+        double sSin = 0.0;
+        double sCos = 0.0;
+        double aSin = 0.0;
+        double aCos = 0.0;
+        for (int g = maxBin - 1; g >= 0; g--) {
+            sSin += signSin[g+1];
+            sCos += signCos[g+1];
+            aSin += ampSin[g+1];
+            aCos += ampCos[g+1];
+            final double c = levels[g];
+            final double ySin = xSin - (aSin - c*sSin);
+            final double yCos = xCos - (aCos - c*sCos);
+            final double rClipped = Math.sqrt(ySin*ySin + yCos*yCos)/framesPerSlice;
+            clipped[g] += framesPerSlice*rClipped;
+        }
+
+        for (int b = 1; b <= maxBin; b++) {
+            signSin[b] = 0.0;
+            signCos[b] = 0.0;
+            ampSin[b] = 0.0;
+            ampCos[b] = 0.0;
+        }
+        xSin = 0.0;
+        xCos = 0.0;
+        maxBin = 0;
+        j = 0;
+        nofSlices++;
+    }
+
+    /**
+     * Average signal per level, same order as the levels. Call once
+     * after the last block.
+     */
+    double[] signalAverages() {
+        final double[] result = new double[levels.length];
+        final double divisor = (double) nofSlices*framesPerSlice;
+        double unclippedSum = 0.0;
+        for (int g = 0; g < levels.length; g++) {
+            unclippedSum += unclipped[g];
+            result[g] = (clipped[g] + unclippedSum)/divisor;
+        }
+        return result;
+    }
+}
@@ -1,13 +1,20 @@
 package st.foglo.gerke_decoder.detector.cw_basic;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.SortedMap;
+import java.util.SortedSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import st.foglo.gerke_decoder.DecoderConfig;
 import st.foglo.gerke_decoder.GerkeDecoder;
 import st.foglo.gerke_decoder.GerkeLib;
 import st.foglo.gerke_decoder.LowpassButterworth;
@@ -23,9 +30,12 @@ import st.foglo.gerke_decoder.GerkeLib.Info;
 import st.foglo.gerke_decoder.GerkeLib.Trace;
 import st.foglo.gerke_decoder.GerkeLib.Warning;
 import st.foglo.gerke_decoder.detector.DetectorBase;
+import st.foglo.gerke_decoder.detector.LocalOscillator;
+import st.foglo.gerke_decoder.detector.Periodogram;
 import st.foglo.gerke_decoder.detector.Signal;
 import st.foglo.gerke_decoder.detector.TrigTable;
 import st.foglo.gerke_decoder.lib.Compute;
+import st.foglo.gerke_decoder.lib.RecursiveGaussian;
 import st.foglo.gerke_decoder.plot.PlotCollector;
 import st.foglo.gerke_decoder.plot.PlotCollector.Mode;
 import st.foglo.gerke_decoder.plot.PlotEntries;
@@ -35,6 +45,17 @@ import st.foglo.gerke_decoder.wave.Wav;
 
 public class CwBasicImpl extends DetectorBase {
 
+    /**
+     * Nof. binary search steps that are served by the first pass
+     * in clip level estimation.
+     */
+    private static final int CLIP_SEARCH_DEPTH = 8;
+
+    /**
+     * Half-width of the phase averaging window, in slices.
+     */
+    private static final int PHASE_WIDTH = 7;
+
     final int decoder;
     final double threshold;
 
@@ -42,8 +63,16 @@ public class CwBasicImpl extends DetectorBase {
 
     final Signal signal;
 
+    /**
+     * Filtered baseband I and Q per slice, kept for the phase plot. Null
+     * if not requested, and in phase-locked mode.
+     */
+    private double[] basebandI;
+    private double[] basebandQ;
+
 
     public CwBasicImpl(
+            DecoderConfig cfg,
             int decoder,
             double threshold,
             int nofSlices,
@@ -54,7 +83,7 @@ public class CwBasicImpl extends DetectorBase {
             int fSpecified
             ) throws Exception {
 
-        super(w, framesPerSlice, nofSlices, tsLength, tuMillis);
+        super(cfg, w, framesPerSlice, nofSlices, tsLength, tuMillis);
 
         this.decoder = decoder;
         this.threshold = threshold;
@@ -62,7 +91,7 @@ public class CwBasicImpl extends DetectorBase {
         if (fSpecified != -1) {
             fBest = fSpecified;
             new Info("specified frequency: %d", fBest);
-            if (GerkeLib.getFlag(GerkeDecoder.O_FPLOT)) {
+            if (cfg.freqPlot) {
                 new Warning("frequency plot skipped when -f option given");
             }
         }
@@ -85,58 +114,28 @@ public class CwBasicImpl extends DetectorBase {
         // TODO, could clipping be applied once and for all, after
         // a certain point has been passed?
 
-        final int clipLevelOverride = GerkeLib.getIntOpt(GerkeDecoder.O_CLIPPING);
+        final int clipLevelOverride = cfg.clipLevel;
 
         final int clipLevel =
                 clipLevelOverride != -1 ? clipLevelOverride : getClipLevel(fBest);
         new Info("clipping level: %d", clipLevel);
 
-        final LowpassFilter filterI;
-        final LowpassFilter filterQ;
-        final String filterCode = GerkeLib.getOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.FILTER.ordinal()];
-        if (filterCode.equals("b")) {
-            final int order = GerkeLib.getIntOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.ORDER.ordinal()];
-            double cutoff =
-                    GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.CUTOFF.ordinal()];
-            filterI = new LowpassButterworth(order, (double)w.frameRate, cutoff* 1000.0/tuMillis, 0.0);
-            filterQ = new LowpassButterworth(order, (double)w.frameRate, cutoff* 1000.0/tuMillis, 0.0);
-        }
-        else if (filterCode.equals("cI")) {
-            final int order = GerkeLib.getIntOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.ORDER.ordinal()];
-            double cutoff =
-                    GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.CUTOFF.ordinal()];
-            // PARAMETER 2.0 dB, ripple
-            filterI = new LowpassChebyshevI(order, (double)w.frameRate, cutoff* 1000.0/tuMillis, 1.5);
-            filterQ = new LowpassChebyshevI(order, (double)w.frameRate, cutoff* 1000.0/tuMillis, 1.5);
-        }
-        else if (filterCode.equals("w")) {
-            double cutoff =
-                    GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.CUTOFF.ordinal()];
-            filterI = new LowpassWindow(w.frameRate, cutoff* 1000.0/tuMillis);
-            filterQ = new LowpassWindow(w.frameRate, cutoff* 1000.0/tuMillis);
-        }
-        else if (filterCode.equals("t")) {
-            filterI = new LowpassTimeSliceSum(framesPerSlice);
-            filterQ = new LowpassTimeSliceSum(framesPerSlice);
-        }
-        else if (filterCode.equals("n")) {
-            filterI = new LowpassNone();
-            filterQ = new LowpassNone();
-        }
-        else {
-            new Death("no such filter supported: '%s'", filterCode);
-            throw new Exception();
-        }
+        final String filterCode = cfg.getHidden(HiddenOpts.FILTER);
 
-        final double[] outSin = new double[nofSlices];
-        final double[] outCos = new double[nofSlices];
+        // magnitude of the filtered baseband signal, per slice
+        final double[] mag = new double[nofSlices];
 
         final long tBegin = System.currentTimeMillis();
-        final CountDownLatch cdl = new CountDownLatch(2);
-        if (GerkeLib.getIntOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.PHASELOCKED.ordinal()] == 1) {
+        if (cfg.getHiddenInt(HiddenOpts.PHASELOCKED) == 1) {
+            if (cfg.getHiddenInt(HiddenOpts.TRACK_RANGE) > 0) {
+                new Warning("frequency tracking is not done when phase-locked");
+            }
+            final double[] outSin = new double[nofSlices];
+            final double[] outCos = new double[nofSlices];
+            final CountDownLatch cdl = new CountDownLatch(2);
             (new Thread(
                     new FilterRunnerPhaseLocked(
-                            filterI,
+                            newFilter(filterCode, 1),
                             w.wav,
                             outSin,
                             framesPerSlice,
@@ -144,25 +143,11 @@ public class CwBasicImpl extends DetectorBase {
                             w.frameRate,
                             0.0,
                             cdl,
-                            tsLength))).start();
-        }
-        else {
-            (new Thread(
-                    new FilterRunner(
-                            filterI,
-                            w.wav,
-                            outSin,
-                            framesPerSlice,
-                            clipLevel, fBest,
-                            w.frameRate,
-                            0.0,
-                            cdl))).start();
-        }
-
-        if (GerkeLib.getIntOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.PHASELOCKED.ordinal()] == 1) {
+                            tsLength,
+                            cfg.getHiddenDouble(HiddenOpts.PLWIDTH)))).start();
             (new Thread(
                     new FilterRunnerZero(
-                            filterQ,
+                            newFilter(filterCode, 1),
                             w.wav,
                             outCos,
                             framesPerSlice,
@@ -170,29 +155,39 @@ public class CwBasicImpl extends DetectorBase {
                             w.frameRate,
                             Math.PI/2,
                             cdl))).start();
+            cdl.await();
+            for (int q = 0; q < nofSlices; q++) {
+                mag[q] = Math.sqrt(outSin[q]*outSin[q] + outCos[q]*outCos[q]);
+            }
         }
         else {
-            (new Thread(
-                    new FilterRunner(
-                            filterQ,
-                            w.wav,
-                            outCos,
-                            framesPerSlice,
-                            clipLevel, fBest,
-                            w.frameRate,
-                            Math.PI/2,
-                            cdl))).start();
+            final int decimation = decimation(filterCode);
+            new Debug("decimation: %d, baseband rate: %f", decimation, (double) w.frameRate/decimation);
+            final int trackRange = cfg.getHiddenInt(HiddenOpts.TRACK_RANGE);
+            final FrequencyTrack track = trackRange > 0 ? trackFrequency(clipLevel, trackRange, decimation) : null;
+            final long warmup = warmupFrames(decimation);
+            final int nofShards = nofShards(filterCode, warmup);
+            if (cfg.phasePlot) {
+                basebandI = new double[nofSlices];
+                basebandQ = new double[nofSlices];
+            }
+            if (nofShards > 1) {
+                new Debug("filter shards: %d, warm-up frames: %d", (long) nofShards, warmup);
+                mixSharded(filterCode, clipLevel, decimation, track, mag, nofShards, warmup);
+            }
+            else {
+                w.scan(new BasebandMixer(
+                        newFilter(filterCode, decimation), newFilter(filterCode, decimation),
+                        framesPerSlice, clipLevel, fBest, w.frameRate, decimation, track, mag, basebandI, basebandQ));
+            }
         }
 
-        cdl.await();
-
-        final double sigma = GerkeLib.getDoubleOpt(GerkeDecoder.O_SIGMA);
+        final double sigma = cfg.sigma;
         final double eps = 0.01; // PARAMETER eps
 
         final int gaussSize = Compute.roundToOdd((sigma/tsLength)*Math.sqrt(-2*Math.log(eps)));
         new Debug("nof. gaussian terms: %d", gaussSize);
 
-        final double[] ringBuffer = new double[gaussSize];
         final double[] expTable = new double[gaussSize];
 
         for (int j = 0; j < gaussSize; j++) {
@@ -204,7 +199,7 @@ public class CwBasicImpl extends DetectorBase {
 
         int sigSize = 0;
         for (int q = 0; true; q++) {
-            if (w.wav.length - q*framesPerSlice < framesPerSlice) {
+            if (w.nofFrames - (long) q*framesPerSlice < framesPerSlice) {
                 break;
             }
             sigSize++;
@@ -212,14 +207,59 @@ public class CwBasicImpl extends DetectorBase {
 
         final double[] sig = new double[sigSize];
 
-        for (int q = 0; true; q++) {      //  q is sig[] index
-
-            if (w.wav.length - q*framesPerSlice < framesPerSlice) {
-                break;
+        final String smoother = cfg.getHidden(HiddenOpts.SMOOTHER);
+        final double sigmaSlices = kernelSigma(expTable);
+        if (smoother.equals("r") && sigmaSlices >= RecursiveGaussian.SIGMA_MIN) {
+            smoothRecursive(mag, sig, sigmaSlices, expTable);
+            if (GerkeLib.isEnabled(GerkeLib.DEBUG)) {
+                final double[] exact = new double[sigSize];
+                smoothExact(mag, exact, expTable);
+                double peak = 0.0;
+                double errorMax = 0.0;
+                for (int q = 0; q < sigSize; q++) {
+                    peak = Compute.dMax(peak, Math.abs(exact[q]));
+                    errorMax = Compute.dMax(errorMax, Math.abs(sig[q] - exact[q]));
+                }
+                new Debug("recursive smoothing, sigma: %f, max error relative to peak: %e",
+                        sigmaSlices,
+                        peak == 0.0 ? 0.0 : errorMax/peak);
             }
+        }
+        else if (smoother.equals("r") || smoother.equals("g")) {
+            if (smoother.equals("r")) {
+                new Debug("sigma too small for recursive smoothing, slices: %f", sigmaSlices);
+            }
+            smoothExact(mag, sig, expTable);
+        }
+        else {
+            new Death("no such smoother supported: '%s'", smoother);
+        }
+        new Info("filtering took ms: %d", System.currentTimeMillis() - tBegin);
+
+
+        if (GerkeLib.isEnabled(GerkeLib.DEBUG)) {
+            final SortedSet<Integer> levels = new TreeSet<Integer>();
+            levels.add(Integer.valueOf(Short.MAX_VALUE));
+            levels.add(Integer.valueOf(clipLevel));
+            final Map<Integer, Double> averages = signalAverages(w, framesPerSlice, fBest, levels);
+            new Debug("signal average: %f", averages.get(Integer.valueOf(Short.MAX_VALUE)).doubleValue());
+            new Debug("signal average clipped: %f", averages.get(Integer.valueOf(clipLevel)).doubleValue());
+        }
+
+        return new Signal(sig, fBest, clipLevel);
+    }
+
+    /**
+     * Smooths the magnitude with the Gaussian kernel. The sum for slice q
+     * runs over a ring of the last gaussSize magnitudes.
+     */
+    private void smoothExact(double[] mag, double[] sig, double[] expTable) {
+        final int gaussSize = expTable.length;
+        final double[] ringBuffer = new double[gaussSize];
+        for (int q = 0; q < sig.length; q++) {      //  q is sig[] index
 
             int ringIndex = q % gaussSize;
-            ringBuffer[ringIndex] = Math.sqrt(outSin[q]*outSin[q] + outCos[q]*outCos[q]);
+            ringBuffer[ringIndex] = mag[q];
             int rr = ringIndex;
             double ss = 0.0;
             for (int ii = 0; ii < gaussSize; ii++) {
@@ -228,15 +268,179 @@ public class CwBasicImpl extends DetectorBase {
             }
             sig[q] = ss/gaussSize;
         }
-        new Info("filtering took ms: %d", System.currentTimeMillis() - tBegin);
+    }
 
+    /**
+     * Standard deviation, in slices, of the kernel in expTable. The
+     * kernel is cut at +/- 1.5 sigma, so this is well below the sigma
+     * that the table was built from.
+     */
+    private static double kernelSigma(double[] expTable) {
+        final int m = (expTable.length-1)/2;
+        double sum = 0.0;
+        double moment = 0.0;
+        for (int j = 0; j < expTable.length; j++) {
+            sum += expTable[j];
+            moment += expTable[j]*Compute.squared(j-m);
+        }
+        return Math.sqrt(moment/sum);
+    }
+
+    /**
+     * Same as smoothExact, with the kernel replaced by a recursive
+     * Gaussian of the same standard deviation (see kernelSigma). The
+     * kernel in smoothExact is centered (gaussSize+1)/2 slices back, so
+     * the magnitude is delayed by that much before the zero-phase
+     * recursive filter, and scaled to the same gain.
+     */
+    private void smoothRecursive(double[] mag, double[] sig, double sigmaSlices, double[] expTable) {
+        final int gaussSize = expTable.length;
+        final int delay = (gaussSize + 1)/2;
+        double gain = 0.0;
+        for (int j = 0; j < gaussSize; j++) {
+            gain += expTable[j];
+        }
+        gain /= gaussSize;
 
-        final double saRaw = signalAverage(fBest, Short.MAX_VALUE);
-        new Debug("signal average: %f", saRaw);
-        final double sa = signalAverage(fBest, clipLevel);
-        new Debug("signal average clipped: %f", sa);
+        final double[] x = new double[sig.length + delay];
+        System.arraycopy(mag, 0, x, delay, sig.length);
+        new RecursiveGaussian(sigmaSlices).smooth(x);
+        for (int q = 0; q < sig.length; q++) {
+            sig[q] = gain*x[q];
+        }
+    }
 
-        return new Signal(sig, fBest, clipLevel);
+    /**
+     * Creates a filter for a signal decimated by the given factor.
+     */
+    private LowpassFilter newFilter(String filterCode, int decimation) throws Exception {
+        final int rate = w.frameRate/decimation;
+        if (filterCode.equals("b")) {
+            final int order = cfg.getHiddenInt(HiddenOpts.ORDER);
+            double cutoff = cfg.getHiddenDouble(HiddenOpts.CUTOFF);
+            return new LowpassButterworth(order, (double)rate, cutoff* 1000.0/tuMillis, 0.0);
+        }
+        else if (filterCode.equals("cI")) {
+            final int order = cfg.getHiddenInt(HiddenOpts.ORDER);
+            double cutoff = cfg.getHiddenDouble(HiddenOpts.CUTOFF);
+            // PARAMETER 2.0 dB, ripple
+            return new LowpassChebyshevI(order, (double)rate, cutoff* 1000.0/tuMillis, 1.5);
+        }
+        else if (filterCode.equals("w")) {
+            double cutoff = cfg.getHiddenDouble(HiddenOpts.CUTOFF);
+            return new LowpassWindow(rate, cutoff* 1000.0/tuMillis);
+        }
+        else if (filterCode.equals("t")) {
+            return new LowpassTimeSliceSum(framesPerSlice/decimation);
+        }
+        else if (filterCode.equals("n")) {
+            return new LowpassNone();
+        }
+        else {
+            new Death("no such filter supported: '%s'", filterCode);
+            throw new Exception();
+        }
+    }
+
+    /**
+     * Decimation factor ahead of the IIR filters: the largest divisor of
+     * the slice length that keeps the baseband rate well above the
+     * cutoff. The other filters run at the full rate.
+     */
+    private int decimation(String filterCode) {
+        if (!(filterCode.equals("b") || filterCode.equals("cI"))) {
+            return 1;
+        }
+        final double cutoff = cfg.getHiddenDouble(HiddenOpts.CUTOFF)*1000.0/tuMillis;
+        // PARAMETER 16, minimum baseband rate relative to the cutoff
+        final int dMax = (int) Math.floor(w.frameRate/(16*cutoff));
+        for (int d = Compute.iMin(dMax, framesPerSlice); d > 1; d--) {
+            if (framesPerSlice % d == 0) {
+                return d;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Tracks the frequency offset from fBest per slice, in a pass of its
+     * own over the recording.
+     */
+    private FrequencyTrack trackFrequency(int clipLevel, int range, int decimation) throws InterruptedException {
+        final FrequencyTracker tracker =
+                new FrequencyTracker(fBest, w.frameRate, framesPerSlice, clipLevel, range, nofSlices);
+        new Debug("frequency tracking, decimation: %d, bins: %d", tracker.decimation, 2*range + 1);
+        w.scan(tracker);
+        final double[] offsets = tracker.getOffsets();
+        double offsetMin = 0.0;
+        double offsetMax = 0.0;
+        for (int q = 0; q < offsets.length; q++) {
+            offsetMin = Compute.dMin(offsetMin, offsets[q]);
+            offsetMax = Compute.dMax(offsetMax, offsets[q]);
+        }
+        new Info("tracked frequency offset, min: %f, max: %f", offsetMin, offsetMax);
+        return new FrequencyTrack(offsets, w.frameRate, framesPerSlice, decimation);
+    }
+
+    /**
+     * Nof. frames that a shard runs its filters before its first slice,
+     * as a whole nof. decimation periods. The time constant is taken as
+     * 1/(2*pi*cutoff).
+     */
+    private long warmupFrames(int decimation) {
+        final double cutoff = cfg.getHiddenDouble(HiddenOpts.CUTOFF)*1000.0/tuMillis;
+        final double timeConstants = cfg.getHiddenDouble(HiddenOpts.FILTER_WARMUP);
+        final long frames = (long) Math.ceil(timeConstants*w.frameRate/(Compute.TWO_PI*cutoff));
+        return ((frames + decimation - 1)/decimation)*decimation;
+    }
+
+    /**
+     * Shards are used for the IIR filters only, and only when the common
+     * pool has more than one thread.
+     */
+    private int nofShards(String filterCode, long warmup) {
+        if (!(filterCode.equals("b") || filterCode.equals("cI"))) {
+            return 1;
+        }
+        final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        if (parallelism < 2) {
+            return 1;
+        }
+        // PARAMETER 16, shards much longer than the warm-up keep the overhead low
+        final long maxShards = w.nofFrames/(16*Math.max(warmup, 1));
+        return (int) Math.min(Math.min(4L*parallelism, maxShards), nofSlices);
+    }
+
+    /**
+     * Mixes and filters shards of consecutive slices in parallel. Each
+     * shard has filters of its own, started the given nof. frames ahead.
+     */
+    private void mixSharded(
+            String filterCode,
+            int clipLevel,
+            int decimation,
+            FrequencyTrack track,
+            double[] mag,
+            int nofShards,
+            long warmup) throws Exception {
+
+        final LocalOscillator lo = new LocalOscillator(fBest, w.frameRate, 0.0);
+        final List<BasebandShard> shards = new ArrayList<BasebandShard>();
+        for (int s = 0; s < nofShards; s++) {
+            final int q0 = (int) ((long) mag.length*s/nofShards);
+            final int q1 = (int) ((long) mag.length*(s+1)/nofShards);
+
+            // slice q covers frames (q-1)*framesPerSlice+1 to q*framesPerSlice
+            final long firstStored = q0 == 0 ? 0L : (long) (q0 - 1)*framesPerSlice + 1;
+            final long fromFrame = Math.max(0L, firstStored - warmup);
+            final long toFrame = (long) (q1 - 1)*framesPerSlice + 1;
+
+            final BasebandMixer mixer = new BasebandMixer(
+                    newFilter(filterCode, decimation), newFilter(filterCode, decimation),
+                    framesPerSlice, clipLevel, lo, decimation, track, mag, basebandI, basebandQ, fromFrame, q0, q1);
+            shards.add(new BasebandShard(w.wav, mixer, fromFrame, toFrame));
+        }
+        ForkJoinTask.invokeAll(shards);
     }
 
     @Override
@@ -246,52 +450,61 @@ public class CwBasicImpl extends DetectorBase {
             double[] flo,
             double[] cei) throws IOException, InterruptedException {
 
-        final double[] cosSum = new double[nofSlices];
-        final double[] sinSum = new double[nofSlices];
-        final double[] wphi = new double[nofSlices];
-
-        for (int q = 0; true; q++) {
-
-            if (w.wav.length - q*framesPerSlice < framesPerSlice) {
-                break;
-            }
+        final PlotEntries pEnt = new PlotEntries(w, cfg);
 
-            // TODO, duplication, this code is also in DecoderBase
-            final double timeSeconds = w.secondsFromSliceIndex(q, framesPerSlice);
+        // slices in the plot interval, with a margin for the averaging window
+        final int qBegin = Compute.iMax(0,
+                (int) Math.floor((pEnt.plotBegin*w.frameRate - w.offsetFrames)/framesPerSlice) - PHASE_WIDTH);
+        final int qEnd = Compute.iMin(nofSlices,
+                (int) Math.ceil((pEnt.plotEnd*w.frameRate - w.offsetFrames)/framesPerSlice) + 1 + PHASE_WIDTH);
+        if (qBegin >= qEnd) {
+            return;
+        }
 
-            final double angleOffset = Compute.TWO_PI*fBest*timeSeconds;
+        // phase is relative to the beginning of the recording, not of the offset
+        final double phaseOffset = Compute.TWO_PI*(((long) fBest*w.offsetFrames) % w.frameRate)/w.frameRate;
 
-                    double sinAcc = 0.0;
-                    double cosAcc = 0.0;
-                    for (int j = 0; j < framesPerSlice; j++) {
-                        // j is frame index
-                        final int ampRaw = w.wav[q*framesPerSlice + j];
-                        final int amp = ampRaw < 0 ?
-                                Compute.iMax(-signal.clipLevel, ampRaw) :
-                                    Compute.iMin(signal.clipLevel, ampRaw);
+        final double[] cosSum = new double[qEnd - qBegin];
+        final double[] sinSum = new double[qEnd - qBegin];
 
-                                final double angle = angleOffset + Compute.TWO_PI*fBest*j/w.frameRate;
-                                sinAcc += Math.sin(angle)*amp;
-                                cosAcc += Math.cos(angle)*amp;
-                    }
-                    cosSum[q] = cosAcc;
-                    sinSum[q] = sinAcc;
+        if (basebandI != null) {
+            // the cosine mixed component is the real part
+            final double cosOffset = Math.cos(phaseOffset);
+            final double sinOffset = Math.sin(phaseOffset);
+            for (int q = qBegin; q < qEnd; q++) {
+                cosSum[q - qBegin] = basebandQ[q]*cosOffset - basebandI[q]*sinOffset;
+                sinSum[q - qBegin] = basebandQ[q]*sinOffset + basebandI[q]*cosOffset;
+            }
         }
-
-        for (int q = 0; q < wphi.length; q++) {
-            wphi[q] = wphi(q, cosSum, sinSum, sig, level, flo, cei);
+        else {
+            final LocalOscillator lo = new LocalOscillator(fBest, w.frameRate, phaseOffset);
+            for (int q = qBegin; q < qEnd; q++) {
+                double sinAcc = 0.0;
+                double cosAcc = 0.0;
+                int j = lo.index((long) q*framesPerSlice);
+                for (int k = 0; k < framesPerSlice; k++) {
+                    // k is frame index
+                    final int ampRaw = w.wav.get((long) q*framesPerSlice + k);
+                    final int amp = ampRaw < 0 ?
+                            Compute.iMax(-signal.clipLevel, ampRaw) :
+                                Compute.iMin(signal.clipLevel, ampRaw);
+                    sinAcc += lo.sin(j)*amp;
+                    cosAcc += lo.cos(j)*amp;
+                    j = lo.next(j);
+                }
+                cosSum[q - qBegin] = cosAcc;
+                sinSum[q - qBegin] = sinAcc;
+            }
         }
 
         final PlotCollector pcPhase = new PlotCollector();
 
-        final PlotEntries pEnt = new PlotEntries(w);
-
-        for (int q = 0; q < wphi.length; q++) {
+        for (int q = qBegin; q < qEnd; q++) {
 
             final double seconds = w.secondsFromSliceIndex(q, framesPerSlice);
 
             if (pEnt.plotBegin <= seconds && seconds <= pEnt.plotEnd) {
-                final double phase = wphi[q];
+                final double phase = wphi(q, qBegin, cosSum, sinSum, sig, level, flo, cei);
                 if (phase != 0.0) {
                     pEnt.addPhase(seconds, phase, 0.0);
                 }
@@ -317,17 +530,38 @@ public class CwBasicImpl extends DetectorBase {
      */
     private int findFrequency() throws IOException, InterruptedException {
 
-        final int nofSubOptions = GerkeLib.getOptMultiLength(GerkeDecoder.O_FRANGE);
-        if (nofSubOptions != 2) {
-            new Death("expecting 2 suboptions, got: %d", nofSubOptions);
-
-        }
-        final int f0 = GerkeLib.getIntOptMulti(GerkeDecoder.O_FRANGE)[0];
-        final int f1 = GerkeLib.getIntOptMulti(GerkeDecoder.O_FRANGE)[1];
+        final int f0 = (int) cfg.freqLow;
+        final int f1 = (int) cfg.freqHigh;
         new Debug("search for frequency in range: %d to %d", f0, f1);
 
         final SortedMap<Integer, Double> pairs =
-                GerkeLib.getFlag(GerkeDecoder.O_FPLOT) ? new TreeMap<Integer, Double>() : null;
+                cfg.freqPlot ? new TreeMap<Integer, Double>() : null;
+
+        // a single pass, overlapping with reading, gives the spectrum for all frequencies
+        final long tBegin = System.currentTimeMillis();
+        final Periodogram periodogram = new Periodogram(framesPerSlice, w.frameRate);
+        w.scan(periodogram);
+        periodogram.finish();
+        new Debug("periodogram computed in ms: %d", (int) (System.currentTimeMillis() - tBegin));
+
+        final int fBest = bestFrequency(periodogram, f0, f1, pairs);
+
+        if (pairs != null) {
+            final PlotCollector fPlot = new PlotCollector();
+            for(Entry<Integer, Double> e : pairs.entrySet()) {
+                fPlot.ps.println(String.format("%d %f", e.getKey().intValue(), e.getValue()));
+            }
+            fPlot.plot(new Mode[] {Mode.POINTS});
+        }
+
+        return fBest;
+    }
+
+    /**
+     * Frequency in the range f0 to f1 where the periodogram peaks. If
+     * pairs is not null, the probed frequencies are collected there.
+     */
+    public static int bestFrequency(Periodogram periodogram, int f0, int f1, SortedMap<Integer, Double> pairs) {
 
         // search in steps of 10 Hz, PARAMETER
         final int fStepCoarse = 10;
@@ -335,7 +569,7 @@ public class CwBasicImpl extends DetectorBase {
         int fBest = -1;
         double rSquaredSumBest = -1.0;
         for (int f = f0; f <= f1; f += fStepCoarse) {
-            final double rSquaredSum = r2Sum(f);
+            final double rSquaredSum = periodogram.r2Sum(f);
             if (pairs != null) {
                 pairs.put(Integer.valueOf(f), rSquaredSum);
             }
@@ -350,7 +584,7 @@ public class CwBasicImpl extends DetectorBase {
         final int g0 = Compute.iMax(0, fBest - 18*fStepFine);
         final int g1 = fBest + 18*fStepFine;
         for (int f = g0; f <= g1; f += fStepFine) {
-            final double rSquaredSum = r2Sum(f);
+            final double rSquaredSum = periodogram.r2Sum(f);
             if (pairs != null) {
                 pairs.put(Integer.valueOf(f), rSquaredSum);
             }
@@ -364,26 +598,34 @@ public class CwBasicImpl extends DetectorBase {
             new Warning("frequency may not be optimal, try a wider range");
         }
 
-        if (pairs != null) {
-            final PlotCollector fPlot = new PlotCollector();
-            for(Entry<Integer, Double> e : pairs.entrySet()) {
-                fPlot.ps.println(String.format("%d %f", e.getKey().intValue(), e.getValue()));
-            }
-            fPlot.plot(new Mode[] {Mode.POINTS});
-        }
-
         return fBest;
     }
 
 
     /**
-     * Iteratively determine a clipping level.
+     * Iteratively determine a clipping level. The probes of the binary
+     * search are served from precomputed signal averages: the first
+     * CLIP_SEARCH_DEPTH levels of the search tree are computed in one pass,
+     * and all levels of the remaining interval in another.
+     */
+    private int getClipLevel(int f) throws InterruptedException {
+        return estimateClipLevel(w, framesPerSlice, f);
+    }
+
+    /**
+     * Clip level for the given recording and frequency, as used by this
+     * detector when no level is specified.
      */
-    private int getClipLevel(int f) {
+    public static int estimateClipLevel(Wav w, int framesPerSlice, int f) throws InterruptedException {
 
         final double delta = GerkeDecoder.P_CLIP_PREC*(1.0 - GerkeDecoder.P_CLIP_STRENGTH);
 
-        final double uNoClip = signalAverage(f, Short.MAX_VALUE);
+        final SortedSet<Integer> levels = new TreeSet<Integer>();
+        levels.add(Integer.valueOf(Short.MAX_VALUE));
+        searchLevels(0, Short.MAX_VALUE, CLIP_SEARCH_DEPTH, levels);
+        final Map<Integer, Double> averages = signalAverages(w, framesPerSlice, f, levels);
+
+        final double uNoClip = averages.get(Integer.valueOf(Short.MAX_VALUE)).doubleValue();
         new Debug("clip level: %d, signal: %f", Short.MAX_VALUE, uNoClip);
 
         int hi = Short.MAX_VALUE;
@@ -396,7 +638,15 @@ public class CwBasicImpl extends DetectorBase {
                 return hi;
             }
 
-            double uNew = signalAverage(f, midpoint);
+            if (!averages.containsKey(Integer.valueOf(midpoint))) {
+                final SortedSet<Integer> remaining = new TreeSet<Integer>();
+                for (int c = lo + 1; c < hi; c++) {
+                    remaining.add(Integer.valueOf(c));
+                }
+                averages.putAll(signalAverages(w, framesPerSlice, f, remaining));
+            }
+
+            double uNew = averages.get(Integer.valueOf(midpoint)).doubleValue();
             new Trace("clip level: %d, signal: %f", midpoint, uNew);
 
             if ((1 - GerkeDecoder.P_CLIP_STRENGTH)*uNoClip > uNew && uNew > (1 - GerkeDecoder.P_CLIP_STRENGTH - delta)*uNoClip) {
@@ -415,63 +665,47 @@ public class CwBasicImpl extends DetectorBase {
     }
 
     /**
-     * Average signal over entire capture, at frequency f. The time slice
-     * length is (framesPerSlice/frameRate)*1000 (ms). Clipping is applied.
+     * Collects the levels that a binary search between lo and hi
+     * probes in its first depth steps.
      */
-    private double signalAverage(int f, int clipLevel) {
-
-        final TrigTable trigTable = new TrigTable(f, framesPerSlice, w.frameRate);
-
-        double rSum = 0.0;
-        int divisor = 0;
-        for (int q = 0; true; q++) {
-            if (w.wav.length - q*framesPerSlice < framesPerSlice) {
-                break;
-            }
-
-            double sinAcc = 0.0;
-            double cosAcc = 0.0;
-
-            for (int j = 0; j < framesPerSlice; j++) {
-                final int ampRaw = (int) w.wav[q*framesPerSlice + j];
-                final int amp = ampRaw < 0 ? Compute.iMax(ampRaw, -clipLevel) : Compute.iMin(ampRaw, clipLevel);
-                sinAcc += trigTable.sin(j)*amp;
-                cosAcc += trigTable.cos(j)*amp;
-            }
-
-            // this quantity is proportional to signal amplitude in time slice
-            final double r = Math.sqrt(sinAcc*sinAcc + cosAcc*cosAcc)/framesPerSlice;
-
-            rSum += framesPerSlice*r;
-            divisor += framesPerSlice;
+    private static void searchLevels(int lo, int hi, int depth, SortedSet<Integer> levels) {
+        final int midpoint = (hi + lo)/2;
+        if (depth == 0 || midpoint == lo) {
+            return;
         }
-
-        return rSum/divisor;
+        levels.add(Integer.valueOf(midpoint));
+        searchLevels(lo, midpoint, depth - 1, levels);
+        searchLevels(midpoint, hi, depth - 1, levels);
     }
 
-    private double r2Sum(int f) {
-        double rSquaredSum = 0.0;
-        final TrigTable trigTable = new TrigTable(f, framesPerSlice, w.frameRate);
-        for (int q = 0; true; q++) {
-            if (w.wav.length - q*framesPerSlice < framesPerSlice) {
-                return rSquaredSum;
-            }
-            double sinAcc = 0.0;
-            double cosAcc = 0.0;
-            for (int j = 0; j < framesPerSlice; j++) {
-                final short amp = w.wav[q*framesPerSlice + j];
-                sinAcc += trigTable.sin(j)*amp;
-                cosAcc += trigTable.cos(j)*amp;
-            }
-            final double rSquared = sinAcc*sinAcc + cosAcc*cosAcc;
-            rSquaredSum += rSquared;
+    /**
+     * Average signal over entire capture, at frequency f, for each of the
+     * given clip levels. The time slice length is
+     * (framesPerSlice/frameRate)*1000 (ms).
+     */
+    private static Map<Integer, Double> signalAverages(
+            Wav w, int framesPerSlice, int f, SortedSet<Integer> levels) throws InterruptedException {
+        final int[] levelArray = new int[levels.size()];
+        int k = 0;
+        for (Integer level : levels) {
+            levelArray[k++] = level.intValue();
+        }
+        final ClipScan scan = new ClipScan(f, framesPerSlice, w.frameRate, levelArray);
+        w.scan(scan);
+        final double[] averages = scan.signalAverages();
+
+        final Map<Integer, Double> result = new HashMap<Integer, Double>();
+        for (int i = 0; i < levelArray.length; i++) {
+            result.put(Integer.valueOf(levelArray[i]), Double.valueOf(averages[i]));
         }
+        return result;
     }
 
     /**
      * Weighted computation of phase angle. Returns 0.0 if there is no tone.
      *
      * @param k
+     * @param base    slice index of x[0] and y[0]
      * @param x
      * @param y
      * @param sig
@@ -479,6 +713,7 @@ public class CwBasicImpl extends DetectorBase {
      */
     private double wphi(
             int k,
+            int base,
             double[] x,  // cos-sum
             double[] y,
             double[] sig,
@@ -486,19 +721,18 @@ public class CwBasicImpl extends DetectorBase {
             double[] flo,
             double[] cei) {
 
-        final int len = sig.length;
-        final int width = 7;
+        final int width = PHASE_WIDTH;
 
         double sumx = 0.0;
         double sumy = 0.0;
         double ampAve = 0.0;
         int m = 0;
-        for (int j = Compute.iMax(0, k-width); j <= Compute.iMin(len-1, k+width); j++) {
+        for (int j = Compute.iMax(base, k-width); j <= Compute.iMin(base+x.length-1, k+width); j++) {
             final double amp = sig[j];
             ampAve += amp;
             m++;
-            sumx += amp*amp*x[j];
-            sumy += amp*amp*y[j];
+            sumx += amp*amp*x[j-base];
+            sumy += amp*amp*y[j-base];
         }
         ampAve = ampAve/m;
 
@@ -3,11 +3,13 @@ package st.foglo.gerke_decoder.detector.cw_basic;
 import java.util.concurrent.CountDownLatch;
 
 import st.foglo.gerke_decoder.LowpassFilter;
+import st.foglo.gerke_decoder.detector.LocalOscillator;
+import st.foglo.gerke_decoder.wave.SampleSource;
 
 public abstract class FilterRunnerBase implements Runnable {
 
     final LowpassFilter f;
-    final short[] wav;
+    final SampleSource wav;
     final double[] out;
 
     final int framesPerSlice;
@@ -16,12 +18,13 @@ public abstract class FilterRunnerBase implements Runnable {
     final int freq;
     final int frameRate;
     final double phaseShift;
+    final LocalOscillator lo;
 
     final double tsLength;
 
     final CountDownLatch cdl;
 
-    public FilterRunnerBase(LowpassFilter f, short[] wav, double[] out, int framesPerSlice, int clipLevel, int freq,
+    public FilterRunnerBase(LowpassFilter f, SampleSource wav, double[] out, int framesPerSlice, int clipLevel, int freq,
             int frameRate, double phaseShift, CountDownLatch cdl, double tsLength) {
         this.f = f;
         this.wav = wav;
@@ -34,6 +37,7 @@ public abstract class FilterRunnerBase implements Runnable {
         this.frameRate = frameRate;
 
         this.phaseShift = phaseShift;
+        this.lo = new LocalOscillator(freq, frameRate, phaseShift);
 
         this.cdl = cdl;
 
@@ -2,25 +2,24 @@ package st.foglo.gerke_decoder.detector.cw_basic;
 
 import java.util.concurrent.CountDownLatch;
 
-import st.foglo.gerke_decoder.GerkeLib;
 import st.foglo.gerke_decoder.LowpassFilter;
-import st.foglo.gerke_decoder.GerkeDecoder;
-import st.foglo.gerke_decoder.GerkeDecoder.HiddenOpts;
 import st.foglo.gerke_decoder.GerkeLib.Info;
 import st.foglo.gerke_decoder.lib.Compute;
+import st.foglo.gerke_decoder.wave.SampleSource;
 
 public final class FilterRunnerPhaseLocked extends FilterRunnerBase {
 
     final int nPhaseAvg;
 
-    public FilterRunnerPhaseLocked(LowpassFilter f, short[] wav, double[] out,
+    public FilterRunnerPhaseLocked(LowpassFilter f, SampleSource wav, double[] out,
             int framesPerSlice,
             int clipLevel,
             int freq,
             int frameRate,
             double phaseShift,
             CountDownLatch cdl,
-            double tsLength) {
+            double tsLength,
+            double plWidth) {
         super(f, wav, out,
                 framesPerSlice,
                 clipLevel,
@@ -29,39 +28,79 @@ public final class FilterRunnerPhaseLocked extends FilterRunnerBase {
                 phaseShift,
                 cdl,
                 tsLength);
-        nPhaseAvg = Compute.roundToOdd(GerkeLib.getDoubleOptMulti(GerkeDecoder.O_HIDDEN)[HiddenOpts.PLWIDTH.ordinal()]*(1/tsLength));
+        nPhaseAvg = Compute.roundToOdd(plWidth*(1/tsLength));
         new Info("nPhaseAvg: %d", nPhaseAvg);
     }
 
     @Override
     public void run() {
 
+        // complex amplitude per slice, and a window of 2*half+1 slices that
+        // slides along with q
+        final double[] sliceSin;
+        final double[] sliceCos;
+        {
+            final long length = wav.length();
+            final int nofSums = length < 1 ? 0 : (int) ((length - 1 + framesPerSlice - 1)/framesPerSlice) + 1;
+            sliceSin = new double[nofSums];
+            sliceCos = new double[nofSums];
+            sliceSums(sliceSin, sliceCos);
+        }
+        final int half = nPhaseAvg/2;
+        final double[] buffer = new double[framesPerSlice];
+        double sinSum = 0.0;
+        double cosSum = 0.0;
+
         for (int q = 0; true; q++) {      //  q is out[] index
 
-            if (wav.length - q*framesPerSlice < framesPerSlice) {
+            if (wav.length() - (long) q*framesPerSlice < framesPerSlice) {
                 break;
             }
 
-            final double phase =
-                    smoothedPhase(nPhaseAvg, q, wav, frameRate, framesPerSlice, clipLevel, freq);
+            // PARAMETER 1024, the window is summed afresh now and then to stop rounding errors from adding up
+            if (q % 1024 == 0) {
+                sinSum = 0.0;
+                cosSum = 0.0;
+                for (int r = Compute.iMax(0, q - half); r <= Compute.iMin(sliceSin.length - 1, q + half); r++) {
+                    sinSum += sliceSin[r];
+                    cosSum += sliceCos[r];
+                }
+            }
+            else {
+                final int enter = q + half;
+                final int leave = q - half - 1;
+                if (enter < sliceSin.length) {
+                    sinSum += sliceSin[enter];
+                    cosSum += sliceCos[enter];
+                }
+                if (leave >= 0) {
+                    sinSum -= sliceSin[leave];
+                    cosSum -= sliceCos[leave];
+                }
+            }
+            final double phase = Math.atan2(-cosSum, sinSum);
+
+            // sin(angle - phase), expanded so that the oscillator tables can be used
+            final double cosPhase = Math.cos(phase + phaseShift);
+            final double sinPhase = Math.sin(phase + phaseShift);
 
+            // the running sum over the slice is filtered as one block
             double sum = 0.0;
-            double outSignal;
+            int j = lo.index(Math.max(0L, (long) q*framesPerSlice - framesPerSlice + 1));
             for (int k = -framesPerSlice+1; k <= 0; k++) {
-                final int wavIndex = q*framesPerSlice + k;
+                final long wavIndex = (long) q*framesPerSlice + k;
 
                 if (wavIndex >= 0) {
-                    int ampRaw = wav[wavIndex];   // k is non-positive!
+                    int ampRaw = wav.get(wavIndex);   // k is non-positive!
                     final int amp = ampRaw < 0 ? Compute.iMax(-clipLevel, ampRaw) : Compute.iMin(clipLevel, ampRaw);
-                    final double angle = ((freq*wavIndex)*Compute.TWO_PI)/frameRate;
-                    sum += Math.sin(angle - phase)*amp;
-                }
-                outSignal = f.filter(sum);
-                if (k == 0) {
-                    out[q] = outSignal;
-                    f.reset();
+                    sum += (lo.sin(j)*cosPhase - lo.cos(j)*sinPhase)*amp;
+                    j = lo.next(j);
                 }
+                buffer[framesPerSlice - 1 + k] = sum;
             }
+            f.filter(buffer, 0, framesPerSlice, buffer);
+            out[q] = buffer[framesPerSlice - 1];
+            f.reset();
         } // iterate over q
 
         if (cdl != null) {
@@ -69,42 +108,28 @@ public final class FilterRunnerPhaseLocked extends FilterRunnerBase {
         }
     }
 
-    private double smoothedPhase(
-            int m,
-            int q,
-            short[] wav,
-            int frameRate,
-            int framesPerSlice,
-            int clipLevel,
-            int freq) {
-
-
-        double sinSum = 0.0;
-        double cosSum = 0.0;
-        // example: m = 5 =>
-        // sum over j=-2, -1, 0, 1, 2
-        for (int j = 0; j <= m/2; j++) {
-            for (int sgn = -1; sgn <= 1; sgn += (2 + (j == 0 ? 99 : 0))) {
-
-                for (int k = -framesPerSlice+1; k <= 0; k++) {
-                    final int wavIndex = q*framesPerSlice + k + (j*sgn*framesPerSlice);
-
-                    if (wavIndex >= 0 && wavIndex < wav.length) {
-                        int ampRaw = wav[wavIndex];   // k is non-positive!
-                        final int amp = ampRaw < 0 ? Compute.iMax(-clipLevel, ampRaw) : Compute.iMin(clipLevel, ampRaw);
-
-                        final double angle = ((freq*wavIndex)*Compute.TWO_PI)/frameRate;
-
-                        final double sinValue = Math.sin(angle+phaseShift);
-                        final double cosValue = Math.cos(angle+phaseShift);
-
-                        sinSum += sinValue*amp;
-                        cosSum += cosValue*amp;
-                    }
-                }
+    /**
+     * Sums of the clipped signal times the oscillator, per slice, in one
+     * pass over the recording. Slice q covers frames (q-1)*framesPerSlice+1
+     * to q*framesPerSlice; the last slice may be incomplete.
+     */
+    private void sliceSums(double[] sliceSin, double[] sliceCos) {
+        final long length = wav.length();
+        int i = 0;
+        for (int q = 0; q < sliceSin.length; q++) {
+            double sinSum = 0.0;
+            double cosSum = 0.0;
+            final long first = Math.max(0L, (long) q*framesPerSlice - framesPerSlice + 1);
+            final long last = Math.min(length - 1, (long) q*framesPerSlice);
+            for (long wavIndex = first; wavIndex <= last; wavIndex++) {
+                final int ampRaw = wav.get(wavIndex);
+                final int amp = ampRaw < 0 ? Compute.iMax(-clipLevel, ampRaw) : Compute.iMin(clipLevel, ampRaw);
+                sinSum += lo.sin(i)*amp;
+                cosSum += lo.cos(i)*amp;
+                i = lo.next(i);
             }
+            sliceSin[q] = sinSum;
+            sliceCos[q] = cosSum;
         }
-
-        return Math.atan2(-cosSum, sinSum);
     }
 }
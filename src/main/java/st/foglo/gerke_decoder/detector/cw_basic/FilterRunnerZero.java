@@ -3,10 +3,11 @@ package st.foglo.gerke_decoder.detector.cw_basic;
 import java.util.concurrent.CountDownLatch;
 
 import st.foglo.gerke_decoder.LowpassFilter;
+import st.foglo.gerke_decoder.wave.SampleSource;
 
 public final class FilterRunnerZero extends FilterRunnerBase {
 
-    public FilterRunnerZero(LowpassFilter f, short[] wav, double[] out,
+    public FilterRunnerZero(LowpassFilter f, SampleSource wav, double[] out,
             int framesPerSlice,
             int clipLevel,
             int freq,
@@ -28,7 +29,7 @@ public final class FilterRunnerZero extends FilterRunnerBase {
 
         for (int q = 0; true; q++) {      //  q is out[] index
 
-            if (wav.length - q*framesPerSlice < framesPerSlice) {
+            if (wav.length() - (long) q*framesPerSlice < framesPerSlice) {
                 break;
             }
             out[q] = 0.0;
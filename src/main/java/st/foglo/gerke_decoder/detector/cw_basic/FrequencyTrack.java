@@ -0,0 +1,64 @@
+package st.foglo.gerke_decoder.detector.cw_basic;
+
+import st.foglo.gerke_decoder.lib.Compute;
+
+/**
+ * Frequency offset per slice, applied to decimated baseband samples as
+ * a rotation that brings the tracked tone to DC. The phase at each slice
+ * start is precomputed, so that any range of samples can be derotated
+ * on its own with the same result.
+ */
+final class FrequencyTrack {
+
+    final int step;                       // decimated samples per slice
+
+    private final double[] omega;         // radians per decimated sample
+    private final double[] phase;         // radians, at the start of each slice
+
+    /**
+     * @param offsets    offset per slice, Hz
+     */
+    FrequencyTrack(double[] offsets, int frameRate, int framesPerSlice, int decimation) {
+        this.step = framesPerSlice/decimation;
+        this.omega = new double[offsets.length];
+        this.phase = new double[offsets.length];
+        double acc = 0.0;
+        for (int q = 0; q < offsets.length; q++) {
+            omega[q] = Compute.TWO_PI*offsets[q]*decimation/frameRate;
+            phase[q] = acc;
+            acc = (acc + step*omega[q]) % Compute.TWO_PI;
+        }
+    }
+
+    /**
+     * Rotates n samples in place, the first one having the given decimated
+     * sample index. Sample k belongs to the slice that ends at or after it.
+     */
+    void derotate(double[] bufI, double[] bufQ, int n, long k0) {
+        int q = -1;
+        double c = 0.0;
+        double s = 0.0;
+        double cw = 0.0;
+        double sw = 0.0;
+        for (int i = 0; i < n; i++) {
+            final long k = k0 + i;
+            final int qq = Compute.iMin((int) ((k + step - 1)/step), omega.length - 1);
+            if (qq != q) {
+                q = qq;
+                final double angle = phase[q] + (k - (long) (q - 1)*step)*omega[q];
+                c = Math.cos(angle);
+                s = Math.sin(angle);
+                cw = Math.cos(omega[q]);
+                sw = Math.sin(omega[q]);
+            }
+            final double valueI = bufI[i];
+            final double valueQ = bufQ[i];
+            bufQ[i] = valueQ*c - valueI*s;
+            bufI[i] = valueQ*s + valueI*c;
+
+            final double cNext = c*cw - s*sw;
+            s = s*cw + c*sw;
+            c = cNext;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package st.foglo.gerke_decoder.detector.cw_basic;
+
+import st.foglo.gerke_decoder.detector.LocalOscillator;
+import st.foglo.gerke_decoder.lib.Compute;
+import st.foglo.gerke_decoder.wave.BlockConsumer;
+
+/**
+ * Follows a drifting tone with a small bank of sliding Goertzel bins,
+ * spaced 1 Hz apart within +/- range Hz of the local oscillator.
+ *
+ * The clipped signal is mixed to complex baseband and boxcar decimated.
+ * For each bin, sums per slice are kept in a ring, and the sum over the
+ * ring is a DFT bin over a window of about one second; the ring slides
+ * one slice at a time. The strongest bin, refined by parabolic
+ * interpolation, gives the offset for the slice at the window centre.
+ * Windows where no bin stands out, or where the strongest bin is at the
+ * edge of the range, are skipped, and the offset of the nearest trusted
+ * window is used instead.
+ *
+ * The per-frame cost is that of the mixing; the bins are updated once
+ * per decimated sample.
+ */
+final class FrequencyTracker implements BlockConsumer {
+
+    /**
+     * Window length, in seconds. The bin spacing is the inverse.
+     */
+    private static final double WINDOW = 1.0; // PARAMETER
+
+    /**
+     * Minimum ratio of the strongest bin power to the mean bin power.
+     */
+    private static final double PEAK_RATIO = 8.0; // PARAMETER
+
+    /**
+     * Minimum decimated rate, relative to the range.
+     */
+    private static final int RATE_FACTOR = 8; // PARAMETER
+
+    private static final int RESUM_INTERVAL = 1024;
+
+    final LocalOscillator lo;
+    final int frameRate;
+    final int framesPerSlice;
+    final int clipLevel;
+    final int range;                      // Hz
+    final int decimation;
+
+    private final int step;               // decimated samples per slice
+    private final int nofBins;
+    private final int ringSize;           // slices per window
+
+    private final double[] offsets;       // Hz, per slice; NaN until assigned
+
+    // per bin: phasor, its step, sums for the current slice, ring and window sums
+    private final double[] phRe;
+    private final double[] phIm;
+    private final double[] rotRe;
+    private final double[] rotIm;
+    private final double[] accRe;
+    private final double[] accIm;
+    private final double[][] ringRe;
+    private final double[][] ringIm;
+    private final double[] winRe;
+    private final double[] winIm;
+
+    private int j;                        // oscillator index
+    private int p;                        // position in the current decimation period
+    private double sumI = 0.0;
+    private double sumQ = 0.0;
+    private long k = 0;                   // decimated sample index
+    private int q = 0;                    // current slice
+
+    FrequencyTracker(int freq, int frameRate, int framesPerSlice, int clipLevel, int range, int nofSlices) {
+        this.lo = new LocalOscillator(freq, frameRate, 0.0);
+        this.frameRate = frameRate;
+        this.framesPerSlice = framesPerSlice;
+        this.clipLevel = clipLevel;
+        this.range = range;
+        this.decimation = decimation(frameRate, framesPerSlice, range);
+        this.step = framesPerSlice/decimation;
+        this.nofBins = 2*range + 1;
+        this.ringSize = Compute.iMax(3, (int) Math.round(WINDOW*frameRate/framesPerSlice));
+
+        this.offsets = new double[nofSlices];
+        for (int r = 0; r < nofSlices; r++) {
+            offsets[r] = Double.NaN;
+        }
+
+        phRe = new double[nofBins];
+        phIm = new double[nofBins];
+        rotRe = new double[nofBins];
+        rotIm = new double[nofBins];
+        accRe = new double[nofBins];
+        accIm = new double[nofBins];
+        ringRe = new double[ringSize][nofBins];
+        ringIm = new double[ringSize][nofBins];
+        winRe = new double[nofBins];
+        winIm = new double[nofBins];
+        for (int b = 0; b < nofBins; b++) {
+            final double angle = -Compute.TWO_PI*(b - range)*decimation/frameRate;
+            rotRe[b] = Math.cos(angle);
+            rotIm[b] = Math.sin(angle);
+        }
+        resetPhasors(0L);
+
+        // frame 0 is last in its decimation period, as in the mixer
+        this.j = 0;
+        this.p = decimation - 1;
+    }
+
+    /**
+     * The largest divisor of the slice length that keeps the decimated
+     * rate at RATE_FACTOR times the range.
+     */
+    private static int decimation(int frameRate, int framesPerSlice, int range) {
+        final int dMax = frameRate/(RATE_FACTOR*Compute.iMax(range, 1));
+        for (int d = Compute.iMin(dMax, framesPerSlice); d > 1; d--) {
+            if (framesPerSlice % d == 0) {
+                return d;
+            }
+        }
+        return 1;
+    }
+
+    @Override
+    public void accept(short[] block, int n) {
+        for (int i = 0; i < n; i++) {
+            final int ampRaw = block[i];
+            final int amp = ampRaw < 0 ? Compute.iMax(-clipLevel, ampRaw) : Compute.iMin(clipLevel, ampRaw);
+            sumI += amp*lo.sin(j);
+            sumQ += amp*lo.cos(j);
+            j = lo.next(j);
+            p++;
+            if (p == decimation) {
+                addSample(sumQ/decimation, -sumI/decimation);
+                sumI = 0.0;
+                sumQ = 0.0;
+                p = 0;
+            }
+        }
+    }
+
+    /**
+     * Adds one decimated baseband sample to the bins; a tone at offset f
+     * Hz rotates as exp(2*pi*i*f*t).
+     */
+    private void addSample(double re, double im) {
+        for (int b = 0; b < nofBins; b++) {
+            final double pr = phRe[b];
+            final double pj = phIm[b];
+            accRe[b] += re*pr - im*pj;
+            accIm[b] += re*pj + im*pr;
+            phRe[b] = pr*rotRe[b] - pj*rotIm[b];
+            phIm[b] = pr*rotIm[b] + pj*rotRe[b];
+        }
+        if (k % step == 0) {
+            endSlice();
+        }
+        k++;
+    }
+
+    private void endSlice() {
+        final int slot = q % ringSize;
+        final double[] oldRe = ringRe[slot];
+        final double[] oldIm = ringIm[slot];
+        for (int b = 0; b < nofBins; b++) {
+            winRe[b] += accRe[b] - oldRe[b];
+            winIm[b] += accIm[b] - oldIm[b];
+            oldRe[b] = accRe[b];
+            oldIm[b] = accIm[b];
+            accRe[b] = 0.0;
+            accIm[b] = 0.0;
+        }
+
+        if (q % RESUM_INTERVAL == 0) {
+            // limit the accumulation of rounding errors
+            for (int b = 0; b < nofBins; b++) {
+                double sRe = 0.0;
+                double sIm = 0.0;
+                for (int r = 0; r < ringSize; r++) {
+                    sRe += ringRe[r][b];
+                    sIm += ringIm[r][b];
+                }
+                winRe[b] = sRe;
+                winIm[b] = sIm;
+            }
+        }
+
+        final int centre = q - ringSize/2;
+        if (q >= ringSize - 1 && centre < offsets.length) {
+            offsets[centre] = peak();
+        }
+
+        q++;
+        resetPhasors(k + 1);
+    }
+
+    /**
+     * Sets the phasors for the given decimated sample exactly, to keep
+     * the recursion from drifting.
+     */
+    private void resetPhasors(long index) {
+        final long frame = index*decimation;
+        for (int b = 0; b < nofBins; b++) {
+            final long rem = ((long) (b - range)*frame) % frameRate;
+            final double angle = -Compute.TWO_PI*rem/frameRate;
+            phRe[b] = Math.cos(angle);
+            phIm[b] = Math.sin(angle);
+        }
+    }
+
+    /**
+     * Offset of the strongest bin in the window, or NaN if it does not
+     * stand out or is at the edge of the range.
+     */
+    private double peak() {
+        int bBest = 0;
+        double pBest = -1.0;
+        double pSum = 0.0;
+        final double[] power = new double[nofBins];
+        for (int b = 0; b < nofBins; b++) {
+            power[b] = winRe[b]*winRe[b] + winIm[b]*winIm[b];
+            pSum += power[b];
+            if (power[b] > pBest) {
+                pBest = power[b];
+                bBest = b;
+            }
+        }
+        if (pSum == 0.0 || pBest < PEAK_RATIO*pSum/nofBins) {
+            return Double.NaN;
+        }
+        else if (bBest == 0 || bBest == nofBins - 1) {
+            // the tone is probably outside the range
+            return Double.NaN;
+        }
+        final double denom = power[bBest-1] - 2*power[bBest] + power[bBest+1];
+        final double delta = denom < 0.0 ? 0.5*(power[bBest-1] - power[bBest+1])/denom : 0.0;
+        return bBest - range + delta;
+    }
+
+    /**
+     * Frequency offset per slice, in Hz, after the whole recording has
+     * been consumed. Slices without a trusted estimate get the value
+     * of the nearest preceding one, or else the nearest following one.
+     */
+    double[] getOffsets() {
+        double hold = Double.NaN;
+        for (int r = 0; r < offsets.length; r++) {
+            if (Double.isNaN(offsets[r])) {
+                offsets[r] = hold;
+            }
+            else {
+                hold = offsets[r];
+            }
+        }
+        hold = 0.0;
+        for (int r = offsets.length - 1; r >= 0; r--) {
+            if (Double.isNaN(offsets[r])) {
+                offsets[r] = hold;
+            }
+            else {
+                hold = offsets[r];
+            }
+        }
+        return offsets;
+    }
+}
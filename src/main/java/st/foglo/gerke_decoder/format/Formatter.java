@@ -1,11 +1,11 @@
 package st.foglo.gerke_decoder.format;
 
+import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
-import st.foglo.gerke_decoder.GerkeDecoder;
-import st.foglo.gerke_decoder.GerkeLib;
+import st.foglo.gerke_decoder.DecoderConfig;
 
 public final class Formatter {
 
@@ -18,40 +18,70 @@ public final class Formatter {
     private final String caseMode;
     private final int lineLength;
     private CapState capState = CapState.LOWER;
+    private final PrintStream out;
 
-    public Formatter() throws NoSuchAlgorithmException {
-        md = MessageDigest.getInstance("MD5");
-
-        final String[] optValues = GerkeLib.getStringOptMulti(GerkeDecoder.O_TEXT_FORMAT);
+    // restriction to a window of a stream, see setWindow()
+    private boolean windowed = false;
+    private double windowEnd;
+    private double margin;
+    private double lastEnd = Double.NEGATIVE_INFINITY;
+    private boolean lastAccepted = true;
 
-        if (optValues.length > 2) {
-                caseMode = "";
-                lineLength = 0;
-                new GerkeLib.Death("Too many option values for option -%s",
-                                GerkeLib.getOptShortName(GerkeDecoder.O_TEXT_FORMAT));
+    public Formatter(DecoderConfig cfg) throws NoSuchAlgorithmException {
+        this(cfg, System.out);
+    }
 
-        }
-        else {
-                caseMode = optValues[0];
+    /**
+     * @param out       stream for the decoded text
+     */
+    public Formatter(DecoderConfig cfg, PrintStream out) throws NoSuchAlgorithmException {
+        this.out = out;
+        md = MessageDigest.getInstance("MD5");
+        caseMode = cfg.textCase;
+        lineLength = cfg.lineLength;
+    }
 
-                if (!(caseMode.equals("L") || caseMode.equals("U") || caseMode.equals("C"))) {
-                        new GerkeLib.Death("Expecting option value L, U or C for option -%s",
-                                        GerkeLib.getOptShortName(GerkeDecoder.O_TEXT_FORMAT));
-                }
+    /**
+     * Restricts the text to characters that end before the given time,
+     * and more than margin seconds after the last character that was
+     * accepted. This is used when a stream is decoded in overlapping
+     * windows, so that each character is written once. A word break
+     * without text goes with the preceding character.
+     *
+     * While a window is set, flush() and newLine() have no effect, since
+     * the text continues in the next window.
+     */
+    public void setWindow(double end, double margin) {
+        this.windowed = true;
+        this.windowEnd = end;
+        this.margin = margin;
+    }
 
-                final String lineLengthAsString =
-                                optValues.length == 2 ? optValues[1] :
-                                        GerkeDecoder.LINE_LENGTH_DEFAULT;
+    public void clearWindow() {
+        windowed = false;
+    }
 
-                lineLength =
-                                GerkeLib.parseInt(lineLengthAsString);
-                if (lineLength == Integer.MIN_VALUE) {
-                        new GerkeLib.Death("Expecting numeric value for line length");
-                }
-                else if (lineLength < 1) {
-                        new GerkeLib.Death("Value for line length is out of range");
+    /**
+     * @param wordBreak
+     * @param text
+     * @param timestamp        -1 for no timestamp
+     * @param seconds          end of the character, seconds
+     */
+    public void add(boolean wordBreak, String text, int timestamp, double seconds) {
+        if (windowed) {
+            final boolean accept = text.isEmpty() ? lastAccepted :
+                seconds < windowEnd && seconds > lastEnd + margin;
+            if (!text.isEmpty()) {
+                lastAccepted = accept;
+                if (accept) {
+                    lastEnd = seconds;
                 }
+            }
+            if (!accept) {
+                return;
+            }
         }
+        add(wordBreak, text, timestamp);
     }
 
     /**
@@ -59,7 +89,7 @@ public final class Formatter {
      * @param text
      * @param timestamp        -1 for no timestamp
      */
-    public void add(boolean wordBreak, String text, int timestamp) {
+    private void add(boolean wordBreak, String text, int timestamp) {
 
             if (caseMode.equals("U")) {
                     sb.append(text.toUpperCase());
@@ -91,17 +121,17 @@ public final class Formatter {
 
         if (wordBreak) {
             if (pos + 1 + sb.length() > lineLength) {
-                newLine();
-                System.out.print(sb.toString());
+                endLine();
+                out.print(sb.toString());
                 pos = sb.length();
             }
             else if (pos > 0) {
-                System.out.print(" ");
-                System.out.print(sb.toString());
+                out.print(" ");
+                out.print(sb.toString());
                 pos += 1 + sb.length();
             }
             else {
-                System.out.print(sb.toString());
+                out.print(sb.toString());
                 pos = sb.length();
             }
             sb = new StringBuilder();
@@ -113,7 +143,13 @@ public final class Formatter {
     }
 
     public void newLine() {
-        System.out.println();
+        if (!windowed) {
+            endLine();
+        }
+    }
+
+    private void endLine() {
+        out.println();
         pos = 0;
     }
 
@@ -127,7 +163,7 @@ public final class Formatter {
     }
 
     public void flush() {
-        if (sb.length() > 0) {
+        if (!windowed && sb.length() > 0) {
             add(true, "", -1);
         }
     }
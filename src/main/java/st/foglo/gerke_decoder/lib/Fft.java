@@ -0,0 +1,73 @@
+package st.foglo.gerke_decoder.lib;
+
+/**
+ * In-place radix-2 complex FFT of a fixed size. Twiddle factors and
+ * the bit-reversal permutation are computed once per instance.
+ */
+public final class Fft {
+
+    public final int size;
+
+    private final double[] cosTable;
+    private final double[] sinTable;
+    private final int[] reversed;
+
+    /**
+     * @param size       a power of 2
+     */
+    public Fft(int size) {
+        if (size < 1 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("FFT size must be a power of 2: " + size);
+        }
+        this.size = size;
+        this.cosTable = new double[size/2];
+        this.sinTable = new double[size/2];
+        for (int k = 0; k < size/2; k++) {
+            cosTable[k] = Math.cos(Compute.TWO_PI*k/size);
+            sinTable[k] = Math.sin(Compute.TWO_PI*k/size);
+        }
+        this.reversed = new int[size];
+        final int bits = Integer.numberOfTrailingZeros(size);
+        for (int k = 0; k < size; k++) {
+            reversed[k] = bits == 0 ? 0 : Integer.reverse(k) >>> (32 - bits);
+        }
+    }
+
+    /**
+     * Returns the smallest power of 2 that is not less than n.
+     */
+    public static int sizeFor(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Forward transform, X[m] = sum of x[k]*exp(-2*pi*i*k*m/size).
+     */
+    public void transform(double[] re, double[] im) {
+        for (int k = 0; k < size; k++) {
+            final int r = reversed[k];
+            if (r > k) {
+                final double tr = re[k]; re[k] = re[r]; re[r] = tr;
+                final double ti = im[k]; im[k] = im[r]; im[r] = ti;
+            }
+        }
+        for (int len = 2; len <= size; len <<= 1) {
+            final int half = len/2;
+            final int step = size/len;
+            for (int i = 0; i < size; i += len) {
+                for (int k = 0; k < half; k++) {
+                    final double c = cosTable[k*step];
+                    final double s = sinTable[k*step];
+                    final int a = i + k;
+                    final int b = a + half;
+                    final double xr = re[b]*c + im[b]*s;
+                    final double xi = im[b]*c - re[b]*s;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package st.foglo.gerke_decoder.lib;
+
+/**
+ * Recursive approximation of Gaussian smoothing, after Young and van
+ * Vliet (1995). A third order causal pass is followed by the same pass
+ * backwards, which gives a zero-phase result with unit gain at DC. The
+ * cost per sample is the same for any sigma.
+ *
+ * The approximation is meant for sigma from 0.5 samples and up.
+ */
+public final class RecursiveGaussian {
+
+    public static final double SIGMA_MIN = 0.5;
+
+    private final double b;                 // gain of the input sample
+    private final double c1;
+    private final double c2;
+    private final double c3;
+
+    /**
+     * @param sigma      standard deviation, in samples
+     */
+    public RecursiveGaussian(double sigma) {
+        if (sigma < SIGMA_MIN) {
+            throw new IllegalArgumentException("sigma too small: " + sigma);
+        }
+        final double q = sigma >= 2.5 ?
+                0.98711*sigma - 0.96330 :
+                    3.97156 - 4.14554*Math.sqrt(1 - 0.26891*sigma);
+        final double q2 = q*q;
+        final double q3 = q2*q;
+        final double b0 = 1.57825 + 2.44413*q + 1.4281*q2 + 0.422205*q3;
+        final double b1 = 2.44413*q + 2.85619*q2 + 1.26661*q3;
+        final double b2 = -(1.4281*q2 + 1.26661*q3);
+        final double b3 = 0.422205*q3;
+        this.c1 = b1/b0;
+        this.c2 = b2/b0;
+        this.c3 = b3/b0;
+        this.b = 1 - (c1 + c2 + c3);
+    }
+
+    /**
+     * Smooths x in place. Values outside the array are taken as zero.
+     */
+    public void smooth(double[] x) {
+        final int n = x.length;
+
+        double w1 = 0.0;
+        double w2 = 0.0;
+        double w3 = 0.0;
+        for (int i = 0; i < n; i++) {
+            final double w0 = b*x[i] + c1*w1 + c2*w2 + c3*w3;
+            x[i] = w0;
+            w3 = w2;
+            w2 = w1;
+            w1 = w0;
+        }
+
+        w1 = 0.0;
+        w2 = 0.0;
+        w3 = 0.0;
+        for (int i = n - 1; i >= 0; i--) {
+            final double w0 = b*x[i] + c1*w1 + c2*w2 + c3*w3;
+            x[i] = w0;
+            w3 = w2;
+            w2 = w1;
+            w1 = w0;
+        }
+    }
+}
@@ -6,8 +6,7 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.Map.Entry;
 
-import st.foglo.gerke_decoder.GerkeDecoder;
-import st.foglo.gerke_decoder.GerkeLib;
+import st.foglo.gerke_decoder.DecoderConfig;
 import st.foglo.gerke_decoder.GerkeLib.Death;
 import st.foglo.gerke_decoder.lib.Compute;
 import st.foglo.gerke_decoder.wave.Wav;
@@ -22,14 +21,10 @@ public class PlotEntries {
 
     public final SortedMap<Double, List<PlotEntryBase>> entries = new TreeMap<Double, List<PlotEntryBase>>();
 
-    public PlotEntries(Wav w) {
+    public PlotEntries(Wav w, DecoderConfig cfg) {
 
-        if (GerkeLib.getOptMultiLength(GerkeDecoder.O_PLINT) != 2) {
-            new Death("bad plot interval: wrong number of suboptions");
-        }
-
-        plotBegin = getPlotBegin(w);
-        plotEnd = getPlotEnd(w);
+        plotBegin = getPlotBegin(cfg);
+        plotEnd = getPlotEnd(w, cfg);
 
         if (plotBegin >= plotEnd) {
             new Death("bad plot interval");
@@ -132,15 +127,15 @@ public class PlotEntries {
         return false;
     }
 
-    private static double getPlotBegin(Wav w) {
-        final double offsetSec = (double) (GerkeLib.getIntOpt(GerkeDecoder.O_OFFSET));
-        return Compute.dMax(GerkeLib.getDoubleOptMulti(GerkeDecoder.O_PLINT)[0], offsetSec);
+    private static double getPlotBegin(DecoderConfig cfg) {
+        final double offsetSec = (double) cfg.offset;
+        return Compute.dMax(cfg.plotBegin, offsetSec);
     }
 
-    private static double getPlotEnd(Wav w) {
+    private static double getPlotEnd(Wav w, DecoderConfig cfg) {
 
         final double wavLengthSec = ((double) w.frameLength)/w.frameRate;
-        final double offsetSec = (double) (GerkeLib.getIntOpt(GerkeDecoder.O_OFFSET));
+        final double offsetSec = (double) cfg.offset;
 
         final double maxEndSec;
         if (w.length == -1) {
@@ -152,7 +147,7 @@ public class PlotEntries {
             maxEndSec = Compute.dMin(offsetSec + w.length, wavLengthSec);
         }
 
-        if (GerkeLib.getDoubleOptMulti(GerkeDecoder.O_PLINT)[1] == -1.0) {
+        if (cfg.plotLength == -1.0) {
             // plot length not specified on command line
             return maxEndSec;
         }
@@ -160,7 +155,7 @@ public class PlotEntries {
             // length specified on command line
             return Compute.dMin(
                     maxEndSec,
-                    getPlotBegin(w) + GerkeLib.getDoubleOptMulti(GerkeDecoder.O_PLINT)[1]);
+                    getPlotBegin(cfg) + cfg.plotLength);
         }
     }
 }
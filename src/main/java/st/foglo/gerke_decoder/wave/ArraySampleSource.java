@@ -0,0 +1,38 @@
+package st.foglo.gerke_decoder.wave;
+
+/**
+ * Samples held on the heap. Used for input that cannot be memory-mapped.
+ * Storage is split into blocks of 2^BLOCK_SHIFT frames so that the
+ * nof. frames is not limited by the maximal array size.
+ */
+public final class ArraySampleSource implements SampleSource {
+
+    private static final int BLOCK_SHIFT = 24;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+
+    private final short[][] blocks;
+    private final long nofFrames;
+
+    public ArraySampleSource(long nofFrames) {
+        this.nofFrames = nofFrames;
+        final int nofBlocks = nofFrames == 0 ? 0 : (int) (((nofFrames - 1) >>> BLOCK_SHIFT) + 1);
+        this.blocks = new short[nofBlocks][];
+        for (int i = 0; i < nofBlocks; i++) {
+            blocks[i] = new short[(int) Math.min(1 << BLOCK_SHIFT, nofFrames - ((long) i << BLOCK_SHIFT))];
+        }
+    }
+
+    void set(long k, short value) {
+        blocks[(int) (k >>> BLOCK_SHIFT)][(int) (k & BLOCK_MASK)] = value;
+    }
+
+    @Override
+    public short get(long k) {
+        return blocks[(int) (k >>> BLOCK_SHIFT)][(int) (k & BLOCK_MASK)];
+    }
+
+    @Override
+    public long length() {
+        return nofFrames;
+    }
+}
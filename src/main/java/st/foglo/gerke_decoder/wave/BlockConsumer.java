@@ -0,0 +1,13 @@
+package st.foglo.gerke_decoder.wave;
+
+/**
+ * Receives the frames of a recording as consecutive blocks.
+ */
+public interface BlockConsumer {
+
+    /**
+     * Consume frames 0 to n-1 of the given block. The block
+     * array is reused once this method returns.
+     */
+    void accept(short[] block, int n);
+}
@@ -0,0 +1,74 @@
+package st.foglo.gerke_decoder.wave;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Samples read directly from a memory-mapped view of the data chunk
+ * of a WAV file. No copy of the recording is made on the heap.
+ *
+ * A single mapping is limited to 2 GB, so the view is made up of
+ * segments of 2^SEG_SHIFT frames each.
+ */
+public final class MappedSampleSource implements SampleSource {
+
+    private static final int SEG_SHIFT = 27;
+    private static final int SEG_MASK = (1 << SEG_SHIFT) - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final int bpf;
+    private final long nofFrames;
+
+    /**
+     * @param ch           open channel, may be closed once this object is created
+     * @param dataOffset   byte position of the first frame in the data chunk
+     * @param bpf          bytes per frame
+     * @param firstFrame   index of first frame to make visible
+     * @param nofFrames    nof. frames to make visible
+     */
+    public MappedSampleSource(FileChannel ch, long dataOffset, int bpf, long firstFrame, long nofFrames)
+            throws IOException {
+        this.bpf = bpf;
+        this.nofFrames = nofFrames;
+
+        final int nofSegments = nofFrames == 0 ? 0 : (int) (((nofFrames - 1) >>> SEG_SHIFT) + 1);
+        this.segments = new MappedByteBuffer[nofSegments];
+        for (int s = 0; s < nofSegments; s++) {
+            final long segFirst = firstFrame + ((long) s << SEG_SHIFT);
+            final long segFrames = Math.min(1 << SEG_SHIFT, nofFrames - ((long) s << SEG_SHIFT));
+            segments[s] = ch.map(MapMode.READ_ONLY, dataOffset + segFirst*bpf, segFrames*bpf);
+            segments[s].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    @Override
+    public short get(long k) {
+        final MappedByteBuffer b = segments[(int) (k >>> SEG_SHIFT)];
+        final int pos = ((int) k & SEG_MASK)*bpf;
+        switch (bpf) {
+        case 2:
+            // 1 channel, 16 bits
+            return b.getShort(pos);
+        case 4:
+            // 2 channels, 16 bits per channel
+            return (short) ((b.getShort(pos) + b.getShort(pos+2))/2);
+        case 3:
+            // 1 channel, 24 bits, drop the least significant byte
+            return b.getShort(pos+1);
+        case 6:
+            // 2 channels, 24 bits per channel, drop the least significant bytes
+            return (short) ((b.getShort(pos+1) + b.getShort(pos+4))/2);
+        default:
+            // 1 channel, 8 bits
+            return (short) (100*b.get(pos));
+        }
+    }
+
+    @Override
+    public long length() {
+        return nofFrames;
+    }
+}
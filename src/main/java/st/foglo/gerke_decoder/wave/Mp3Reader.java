@@ -0,0 +1,383 @@
+package st.foglo.gerke_decoder.wave;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+/**
+ * Decodes an MP3 file in-process, as the samples are needed. No
+ * intermediate WAV file is written, and no copy of the recording is made
+ * on the heap.
+ *
+ * The compressed file is memory-mapped. A first pass reads the frame
+ * headers only, up to the end of the frames selected by the offset and
+ * maximal length, and notes where each run of RUN_FRAMES MP3 frames
+ * begins. Samples are then decoded a run at a time, with channels merged.
+ * A frame may depend on bits and filter state from the frames before it,
+ * so decoding from the start of a run begins one run early.
+ *
+ * Each thread decodes on its own, so that segments may be analyzed in
+ * parallel. A thread that reads the samples in order decodes each run
+ * once.
+ */
+final class Mp3Reader implements SampleSource {
+
+    /**
+     * Nof. MP3 frames per run.
+     */
+    private static final int RUN_FRAMES = 32;
+
+    final AudioFormat af;
+
+    /**
+     * Nof. frames in the file, counted no further than the end of the
+     * frames selected by the offset and maximal length.
+     */
+    final long frameLength;
+
+    private final String file;
+    private final MappedByteBuffer mp3;
+    private final long firstFrame;           // frame offset given by -o
+    private final long nofFrames;            // nof. frames selected
+    private final int framesPerMp3Frame;     // nof. frames decoded from each MP3 frame
+    private final int runLength;             // nof. frames per run
+    private final int[] runPos;              // byte position of each run
+
+    private final ThreadLocal<Cursor> cursor = new ThreadLocal<Cursor>() {
+        @Override
+        protected Cursor initialValue() {
+            return new Cursor();
+        }
+    };
+
+    /**
+     * @param offset       offset (s)
+     * @param length       max length (s), or -1 for no limit
+     */
+    Mp3Reader(String file, int offset, int length) throws IOException {
+
+        this.file = file;
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel ch = raf.getChannel();
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("MP3 file too large: " + file);
+            }
+            this.mp3 = ch.map(MapMode.READ_ONLY, 0, ch.size());
+        }
+        finally {
+            raf.close();
+        }
+
+        final Bitstream bs = new Bitstream(new BufferInputStream(mp3));
+        try {
+            final List<Integer> positions = new ArrayList<Integer>();
+            int pos = firstFramePos(mp3);
+
+            AudioFormat format = null;
+            int frameRate = 0;
+            int samplesPerFrame = 0;
+            long lastFrame = Long.MAX_VALUE;
+            long frameCount = 0;
+            int nofMp3Frames = 0;
+
+            // headers only, no decoding
+            for (Header h = bs.readFrame(); h != null && frameCount < lastFrame; h = bs.readFrame()) {
+                bs.closeFrame();
+                if (format == null) {
+                    frameRate = h.frequency();
+                    final int nch = h.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+                    format = new AudioFormat(frameRate, 16, nch, true, false);
+                    samplesPerFrame = samplesPerFrame(h);
+                    lastFrame = length == -1 ? Long.MAX_VALUE : (long) (offset + length)*frameRate;
+                }
+                // the bitstream skips bytes that are not part of a frame
+                pos = framePos(mp3, pos, h.getSyncHeader(), h.framesize, nofMp3Frames > 0);
+                if (pos == -1) {
+                    throw new IOException(String.format(
+                            "cannot find header of MP3 frame %d in: %s", nofMp3Frames, file));
+                }
+                if (nofMp3Frames % RUN_FRAMES == 0) {
+                    positions.add(Integer.valueOf(pos));
+                }
+                pos += 4 + h.framesize;
+                nofMp3Frames++;
+                frameCount += samplesPerFrame;
+            }
+
+            if (format == null) {
+                throw new IOException("no MP3 frames found in: " + file);
+            }
+
+            this.af = format;
+            this.frameLength = frameCount;
+            this.firstFrame = (long) offset*frameRate;
+            this.nofFrames = length == -1 ? frameCount - firstFrame :
+                Math.min((long) length*frameRate, frameCount - firstFrame);
+            this.framesPerMp3Frame = samplesPerFrame;
+            this.runLength = RUN_FRAMES*framesPerMp3Frame;
+            this.runPos = new int[positions.size()];
+            for (int r = 0; r < runPos.length; r++) {
+                runPos[r] = positions.get(r).intValue();
+            }
+        }
+        catch (JavaLayerException e) {
+            throw new IOException("cannot decode MP3 file: " + file, e);
+        }
+        finally {
+            close(bs);
+        }
+    }
+
+    @Override
+    public short get(long k) {
+        final long frame = firstFrame + k;
+        final Cursor c = cursor.get();
+        if (frame < c.begin || frame >= c.begin + c.nofSamples) {
+            c.load((int) (frame/runLength));
+            if (frame - c.begin >= c.nofSamples) {
+                throw new IllegalStateException(String.format(
+                        "MP3 frame %d not decoded, file: %s", frame, file));
+            }
+        }
+        return c.samples[(int) (frame - c.begin)];
+    }
+
+    @Override
+    public long length() {
+        return nofFrames;
+    }
+
+    /**
+     * Decoding state of one thread.
+     */
+    private final class Cursor {
+
+        Bitstream bs = null;
+        Decoder decoder = null;
+        int nextRun = -1;                    // run that the bitstream is positioned at
+
+        final short[] samples = new short[runLength];
+        long begin = 0;                      // frame index of samples[0]
+        int nofSamples = 0;
+
+        /**
+         * Decodes the given run, continuing from the previous run if
+         * possible.
+         */
+        void load(int run) {
+            try {
+                if (run != nextRun) {
+                    close(bs);
+                    nextRun = Math.max(0, run - 1);
+                    final ByteBuffer b = mp3.duplicate();
+                    b.position(runPos[nextRun]);
+                    bs = new Bitstream(new BufferInputStream(b));
+                    decoder = new Decoder();
+                }
+                for (; nextRun <= run; nextRun++) {
+                    nofSamples = decodeRun();
+                }
+                begin = (long) run*runLength;
+            }
+            catch (JavaLayerException e) {
+                throw new IllegalStateException("cannot decode MP3 file: " + file, e);
+            }
+        }
+
+        private int decodeRun() throws JavaLayerException {
+            int n = 0;
+            for (int i = 0; i < RUN_FRAMES; i++) {
+                final Header h = bs.readFrame();
+                if (h == null) {
+                    break;
+                }
+                final SampleBuffer sb = (SampleBuffer) decoder.decodeFrame(h, bs);
+                bs.closeFrame();
+
+                final short[] buffer = sb.getBuffer();
+                final int nch = sb.getChannelCount();
+                final int end = n + framesPerMp3Frame;
+                final int nFrames = Math.min(sb.getBufferLength()/nch, framesPerMp3Frame);
+                for (int j = 0; j < nFrames; j++) {
+                    samples[n++] = nch == 1 ? buffer[j] :
+                        (short) ((buffer[nch*j] + buffer[nch*j + 1])/2);
+                }
+                // a frame that refers to data in a skipped frame gives no
+                // samples; fill in silence so that later frames keep their time
+                for (; n < end; n++) {
+                    samples[n] = 0;
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Nof. samples per channel in each MP3 frame.
+     */
+    private static int samplesPerFrame(Header h) {
+        if (h.layer() == 1) {
+            return 384;
+        }
+        else if (h.layer() == 2 || h.version() == Header.MPEG1) {
+            return 1152;
+        }
+        else {
+            return 576;
+        }
+    }
+
+    /**
+     * Byte position of the first MPEG audio frame header, after an
+     * ID3v2 tag if there is one.
+     */
+    private static int firstFramePos(ByteBuffer b) {
+        int pos = 0;
+        if (b.limit() >= 10 && b.get(0) == 'I' && b.get(1) == 'D' && b.get(2) == '3') {
+            // tag size is stored as 4 times 7 bits, and excludes header and footer
+            final int size = (b.get(6) & 0x7F) << 21 | (b.get(7) & 0x7F) << 14 |
+                    (b.get(8) & 0x7F) << 7 | (b.get(9) & 0x7F);
+            pos = 10 + size + ((b.get(5) & 0x10) != 0 ? 10 : 0);
+        }
+        for (; pos + 1 < b.limit(); pos++) {
+            if ((b.get(pos) & 0xFF) == 0xFF && (b.get(pos + 1) & 0xE0) == 0xE0) {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Byte position of the frame with the given header that the bitstream
+     * reads next, searching from the given position on, or -1 if there is
+     * none. As in the bitstream, a frame is skipped unless it is followed
+     * by the sync word of another frame or by the end of the file.
+     *
+     * @param frameSize    frame size, excluding the header
+     * @param strict       true if frames have been read before
+     */
+    private static int framePos(ByteBuffer b, int pos, int header, int frameSize, boolean strict) {
+        for (int p = pos; p + 4 <= b.limit(); p++) {
+            if (b.getInt(p) == header) {
+                final int next = p + 4 + frameSize;
+                if (next == b.limit() ||
+                        next + 4 <= b.limit() && isSync(b.getInt(next), header, strict)) {
+                    return p;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * True if the bitstream takes the given 4 bytes as the start of a frame
+     * after the frame with the given header. Once frames have been read,
+     * the version, layer, sampling frequency and mono mode must stay the same.
+     */
+    private static boolean isSync(int word, int header, boolean strict) {
+        if (strict) {
+            return (word & 0xFFF80C00) == (header & 0xFFF80C00) &&
+                    ((word & 0xC0) == 0xC0) == ((header & 0xC0) == 0xC0);
+        }
+        else {
+            return (word & 0xFFE00000) == 0xFFE00000 &&
+                    (word >>> 19 & 3) != 1 && (word >>> 17 & 3) != 0 && (word >>> 10 & 3) != 3;
+        }
+    }
+
+    private static void close(Bitstream bs) {
+        if (bs != null) {
+            try {
+                bs.close();
+            }
+            catch (JavaLayerException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Reads from a buffer, from its position on.
+     */
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer b;
+
+        BufferInputStream(ByteBuffer b) {
+            this.b = b;
+        }
+
+        @Override
+        public int read() {
+            return b.hasRemaining() ? b.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            else if (!b.hasRemaining()) {
+                return -1;
+            }
+            final int n = Math.min(len, b.remaining());
+            b.get(bytes, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return b.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readLimit) {
+            b.mark();
+        }
+
+        @Override
+        public void reset() {
+            b.reset();
+        }
+    }
+
+    /**
+     * True if the file starts with an ID3v2 tag or an MPEG audio frame header.
+     */
+    static boolean isMp3(String file) throws IOException {
+        final InputStream is = new FileInputStream(file);
+        try {
+            final byte[] b = new byte[3];
+            final int n = is.read(b);
+            if (n == 3 && b[0] == 'I' && b[1] == 'D' && b[2] == '3') {
+                return true;
+            }
+            return n >= 2 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xE0) == 0xE0;
+        }
+        finally {
+            is.close();
+        }
+    }
+}
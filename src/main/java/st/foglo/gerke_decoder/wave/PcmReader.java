@@ -0,0 +1,40 @@
+package st.foglo.gerke_decoder.wave;
+
+/**
+ * Fetches all frames of a sample source, in order, and puts them in a
+ * ring. For a memory-mapped source this is where the disk reads happen.
+ */
+final class PcmReader implements Runnable {
+
+    static final int BLOCK_SIZE = 1 << 12;
+
+    private final SampleSource source;
+    private final SampleRing ring;
+
+    PcmReader(SampleSource source, SampleRing ring) {
+        this.source = source;
+        this.ring = ring;
+    }
+
+    @Override
+    public void run() {
+        final short[] block = new short[BLOCK_SIZE];
+        final long nofFrames = source.length();
+        try {
+            for (long k = 0; k < nofFrames; ) {
+                final int n = (int) Math.min(BLOCK_SIZE, nofFrames - k);
+                for (int j = 0; j < n; j++) {
+                    block[j] = source.get(k + j);
+                }
+                ring.put(block, n);
+                k += n;
+            }
+        }
+        catch (InterruptedException e) {
+            // the consumer has given up
+        }
+        finally {
+            ring.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package st.foglo.gerke_decoder.wave;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import st.foglo.gerke_decoder.DecoderConfig;
+import st.foglo.gerke_decoder.GerkeLib.Death;
+import st.foglo.gerke_decoder.GerkeLib.Info;
+
+/**
+ * Audio read from a pipe, delivered as windows of frames that may overlap.
+ * The stream is either a WAV stream or, if the configuration gives a raw
+ * format, signed little-endian PCM. Frames that may be part of a later window are
+ * kept; earlier frames are dropped.
+ */
+public final class PcmStream {
+
+    private final InputStream in;
+    private final AudioFormat af;
+    private final int bpf;
+    public final int frameRate;
+
+    private short[] buf = new short[0];   // frames kept, from bufStart on
+    private long bufStart = 0;
+    private int bufLength = 0;
+    private boolean endOfStream = false;
+
+    public PcmStream(InputStream in, DecoderConfig cfg) throws IOException, UnsupportedAudioFileException {
+
+        if (cfg.rawRate == -1) {
+            final AudioInputStream ais = AudioSystem.getAudioInputStream(new BufferedInputStream(in));
+            this.af = ais.getFormat();
+            this.in = ais;
+        }
+        else {
+            this.af = new AudioFormat(Encoding.PCM_SIGNED,
+                    cfg.rawRate, cfg.rawBits, cfg.rawChannels, cfg.rawChannels*cfg.rawBits/8, cfg.rawRate, false);
+            this.in = new BufferedInputStream(in);
+        }
+        new Info("audio format: %s", af.toString());
+
+        if (af.isBigEndian()) {
+            new Death("cannot handle big-endian WAV file");
+        }
+        this.bpf = af.getFrameSize();
+        this.frameRate = Math.round(af.getFrameRate());
+        Wav.checkFrameFormat(bpf, af.getChannels());
+    }
+
+    /**
+     * Returns the window of the given nof. frames that begins at the given
+     * frame, waiting for the frames to arrive. The window is shorter if the
+     * stream ends first, and null if it has no frames. Frames before the
+     * start are dropped, so the start must not decrease from one call to
+     * the next, and not go past the end of the previous window.
+     */
+    public Wav next(long start, int nofFrames) throws IOException {
+
+        final int drop = (int) (start - bufStart);
+        System.arraycopy(buf, drop, buf, 0, bufLength - drop);
+        bufLength -= drop;
+        bufStart = start;
+
+        if (buf.length < nofFrames) {
+            final short[] newBuf = new short[nofFrames];
+            System.arraycopy(buf, 0, newBuf, 0, bufLength);
+            buf = newBuf;
+        }
+
+        final int blockFrames = Math.min(nofFrames, frameRate);
+        final byte[] b = new byte[bpf*blockFrames];
+        while (bufLength < nofFrames && !endOfStream) {
+            final int nBytes = bpf*Math.min(blockFrames, nofFrames - bufLength);
+            final int nRead = readFully(b, nBytes);
+            if (nRead < nBytes) {
+                endOfStream = true;
+            }
+            for (int j = 0; j < nRead/bpf; j++) {
+                buf[bufLength++] = Wav.frameValue(b, bpf*j, bpf);
+            }
+        }
+
+        final int n = Math.min(bufLength, nofFrames);
+        if (n == 0) {
+            return null;
+        }
+
+        final ArraySampleSource wav = new ArraySampleSource(n);
+        for (int k = 0; k < n; k++) {
+            wav.set(k, buf[k]);
+        }
+        return new Wav("-", af, wav, start);
+    }
+
+    /**
+     * True once the end of the stream has been seen.
+     */
+    public boolean ended() {
+        return endOfStream;
+    }
+
+    /**
+     * Blocks until the requested nof. bytes have arrived or the stream ends.
+     */
+    private int readFully(byte[] b, int nBytes) throws IOException {
+        int n = 0;
+        while (n < nBytes) {
+            final int nRead = in.read(b, n, nBytes - n);
+            if (nRead == -1) {
+                break;
+            }
+            n += nRead;
+        }
+        return n;
+    }
+}
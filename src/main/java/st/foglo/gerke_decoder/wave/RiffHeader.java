@@ -0,0 +1,175 @@
+package st.foglo.gerke_decoder.wave;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Locates the format and data chunks of a RIFF/WAVE file. The RF64 and
+ * BW64 variants, where 64-bit sizes are given in a ds64 chunk, are
+ * handled too.
+ */
+final class RiffHeader {
+
+    static final int FORMAT_PCM = 1;
+    static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    /**
+     * Bytes 2 to 15 of the SubFormat GUID in a WAVE_FORMAT_EXTENSIBLE
+     * format chunk, common to the KSDATAFORMAT_SUBTYPE_* GUIDs that
+     * correspond to a plain format tag; bytes 0 and 1 hold the tag.
+     */
+    private static final byte[] GUID_SUFFIX = new byte[] {
+            0x00, 0x00, 0x00, 0x00, 0x10, 0x00,
+            (byte) 0x80, 0x00, 0x00, (byte) 0xAA, 0x00, 0x38, (byte) 0x9B, 0x71};
+
+    /**
+     * Size of a WAVE_FORMAT_EXTENSIBLE format chunk, up to and including
+     * the SubFormat GUID.
+     */
+    private static final int EXTENSIBLE_SIZE = 40;
+
+    /**
+     * A 32-bit size field with this value is overridden by the ds64 chunk.
+     */
+    private static final long SIZE_IN_DS64 = 0xFFFFFFFFL;
+
+    final int formatTag;
+    final int subFormat;                 // from the SubFormat GUID, or -1
+    final int nofChannels;
+    final int frameRate;
+    final int bytesPerFrame;
+    final int bitsPerSample;
+
+    /**
+     * Position and size of the data chunk payload, in bytes.
+     */
+    final long dataOffset;
+    final long dataSize;
+
+    private RiffHeader(int formatTag, int subFormat, int nofChannels, int frameRate, int bytesPerFrame,
+            int bitsPerSample, long dataOffset, long dataSize) {
+        this.formatTag = formatTag;
+        this.subFormat = subFormat;
+        this.nofChannels = nofChannels;
+        this.frameRate = frameRate;
+        this.bytesPerFrame = bytesPerFrame;
+        this.bitsPerSample = bitsPerSample;
+        this.dataOffset = dataOffset;
+        this.dataSize = dataSize;
+    }
+
+    long nofFrames() {
+        return dataSize/bytesPerFrame;
+    }
+
+    boolean isPcm() {
+        return formatTag == FORMAT_PCM || formatTag == FORMAT_EXTENSIBLE && subFormat == FORMAT_PCM;
+    }
+
+    /**
+     * Returns null if the file is not a RIFF/WAVE file with a format
+     * chunk preceding the data chunk.
+     */
+    static RiffHeader parse(FileChannel ch) throws IOException {
+
+        final long fileSize = ch.size();
+        final ByteBuffer b = ByteBuffer.allocate(EXTENSIBLE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (!readFully(ch, b, 0, 12) || !tag(b, 8).equals("WAVE")) {
+            return null;
+        }
+        final String riffId = tag(b, 0);
+        final boolean isRf64 = riffId.equals("RF64") || riffId.equals("BW64");
+        if (!isRf64 && !riffId.equals("RIFF")) {
+            return null;
+        }
+
+        long ds64DataSize = -1;
+
+        int formatTag = -1;
+        int subFormat = -1;
+        int nch = 0;
+        int frameRate = 0;
+        int bpf = 0;
+        int bits = 0;
+
+        for (long pos = 12; pos + 8 <= fileSize; ) {
+            if (!readFully(ch, b, pos, 8)) {
+                return null;
+            }
+            final String id = tag(b, 0);
+            final long size = b.getInt(4) & 0xFFFFFFFFL;
+            if (id.equals("ds64")) {
+                // riff size, data size, sample count, ...
+                if (!readFully(ch, b, pos + 8, 16)) {
+                    return null;
+                }
+                ds64DataSize = b.getLong(8);
+            }
+            else if (id.equals("fmt ")) {
+                if (!readFully(ch, b, pos + 8, 16)) {
+                    return null;
+                }
+                formatTag = b.getShort(0) & 0xFFFF;
+                nch = b.getShort(2) & 0xFFFF;
+                frameRate = b.getInt(4);
+                bpf = b.getShort(12) & 0xFFFF;
+                bits = b.getShort(14) & 0xFFFF;
+                if (formatTag == FORMAT_EXTENSIBLE && size >= EXTENSIBLE_SIZE) {
+                    if (!readFully(ch, b, pos + 8, EXTENSIBLE_SIZE)) {
+                        return null;
+                    }
+                    subFormat = subFormat(b, 24);
+                }
+            }
+            else if (id.equals("data")) {
+                if (formatTag == -1 || bpf == 0) {
+                    return null;
+                }
+                // recorders that are interrupted may leave the size undefined
+                final long available = fileSize - (pos + 8);
+                final long declared = isRf64 && size == SIZE_IN_DS64 ? ds64DataSize : size;
+                final long dataSize = declared <= 0 || declared > available ? available : declared;
+                return new RiffHeader(formatTag, subFormat, nch, frameRate, bpf, bits, pos + 8, dataSize);
+            }
+            pos += 8 + size + (size % 2);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the format tag that the GUID at the given index stands for,
+     * or -1 if it is not one of the KSDATAFORMAT_SUBTYPE_* GUIDs.
+     */
+    private static int subFormat(ByteBuffer b, int index) {
+        for (int i = 0; i < GUID_SUFFIX.length; i++) {
+            if (b.get(index + 2 + i) != GUID_SUFFIX[i]) {
+                return -1;
+            }
+        }
+        return b.getShort(index) & 0xFFFF;
+    }
+
+    private static boolean readFully(FileChannel ch, ByteBuffer b, long pos, int len) throws IOException {
+        b.clear();
+        b.limit(len);
+        for (long p = pos; b.hasRemaining(); ) {
+            final int nRead = ch.read(b, p);
+            if (nRead == -1) {
+                return false;
+            }
+            p += nRead;
+        }
+        return true;
+    }
+
+    private static String tag(ByteBuffer b, int index) {
+        final char[] c = new char[4];
+        for (int i = 0; i < 4; i++) {
+            c[i] = (char) b.get(index + i);
+        }
+        return new String(c);
+    }
+}
@@ -0,0 +1,91 @@
+package st.foglo.gerke_decoder.wave;
+
+/**
+ * Bounded buffer of frame values, passed from one producer thread to
+ * one consumer thread. Frames are copied outside of the lock; only the
+ * counters are guarded.
+ */
+final class SampleRing {
+
+    private final short[] ring;
+    private final int mask;
+
+    private long head = 0;              // nof. frames put
+    private long tail = 0;              // nof. frames taken
+    private boolean closed = false;
+
+    SampleRing(int capacityShift) {
+        this.ring = new short[1 << capacityShift];
+        this.mask = ring.length - 1;
+    }
+
+    /**
+     * Appends n frames from the given array. Blocks while the ring is full.
+     */
+    void put(short[] b, int n) throws InterruptedException {
+        for (int i = 0; i < n; ) {
+            final long h;
+            final int m;
+            synchronized (this) {
+                while (head - tail == ring.length) {
+                    wait();
+                }
+                h = head;
+                m = (int) Math.min(n - i, ring.length - (head - tail));
+            }
+            copyIn(b, i, h, m);
+            synchronized (this) {
+                head += m;
+                notifyAll();
+            }
+            i += m;
+        }
+    }
+
+    /**
+     * Signals that no more frames will be put.
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Removes frames into the given array. Blocks while the ring is empty.
+     * Returns the nof. frames taken, or -1 if the ring is closed and empty.
+     */
+    int take(short[] b) throws InterruptedException {
+        final long t;
+        final int m;
+        synchronized (this) {
+            while (head == tail && !closed) {
+                wait();
+            }
+            if (head == tail) {
+                return -1;
+            }
+            t = tail;
+            m = (int) Math.min(b.length, head - tail);
+        }
+        copyOut(b, t, m);
+        synchronized (this) {
+            tail += m;
+            notifyAll();
+        }
+        return m;
+    }
+
+    private void copyIn(short[] b, int i, long h, int m) {
+        final int pos = (int) (h & mask);
+        final int first = Math.min(m, ring.length - pos);
+        System.arraycopy(b, i, ring, pos, first);
+        System.arraycopy(b, i + first, ring, 0, m - first);
+    }
+
+    private void copyOut(short[] b, long t, int m) {
+        final int pos = (int) (t & mask);
+        final int first = Math.min(m, ring.length - pos);
+        System.arraycopy(ring, pos, b, 0, first);
+        System.arraycopy(ring, 0, b, first, m - first);
+    }
+}
@@ -0,0 +1,18 @@
+package st.foglo.gerke_decoder.wave;
+
+/**
+ * Random access to the samples of a recording. Index 0 refers to the
+ * first frame after the offset given by the -o option.
+ */
+public interface SampleSource {
+
+    /**
+     * Returns the signal value of frame k, multiple channels merged.
+     */
+    short get(long k);
+
+    /**
+     * Returns the nof. frames that can be accessed.
+     */
+    long length();
+}
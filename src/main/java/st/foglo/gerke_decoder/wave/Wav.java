@@ -2,44 +2,61 @@ package st.foglo.gerke_decoder.wave;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 
+import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
-import st.foglo.gerke_decoder.GerkeDecoder;
 import st.foglo.gerke_decoder.GerkeLib;
 import st.foglo.gerke_decoder.GerkeLib.Death;
 import st.foglo.gerke_decoder.GerkeLib.Info;
 
 /**
- * Read a WAV file into a short[] array.
+ * Provides access to the samples of a recording. Plain RIFF/WAVE PCM files
+ * are memory-mapped, MP3 files are decoded in-process, and other input is
+ * read into heap storage.
  */
 public final class Wav {
 
+    /**
+     * Capacity of the ring used by scan(), as a power of 2.
+     */
+    private static final int RING_SHIFT = 16;
+
     final String file;                   // file path
 
-    final AudioInputStream ais;
     final AudioFormat af;
     public final long frameLength;       // total nof. frames
 
     public final int frameRate;          // frames/s
     private final int offset;            // offset (s)
-    private final int offsetFrames;      // offset as nof. frames
+    public final long offsetFrames;      // offset as nof. frames
     public final int length;             // length (s)
-    public final short[] wav;            // signal values
-    public final int nofFrames;          // nof. frames == length of wav
+    public final SampleSource wav;       // signal values
+    public final long nofFrames;         // nof. frames == length of wav
 
-    public Wav() throws IOException, UnsupportedAudioFileException {
+    /**
+     * @param offset     offset (s)
+     * @param length     length (s), -1 for all of the file
+     */
+    public Wav(String file, int offset, int length) throws IOException, UnsupportedAudioFileException {
 
-        if (GerkeLib.nofArguments() != 1) {
-            new GerkeLib.Death("expecting one filename argument, try -h for help");
-        }
-        this.file = GerkeLib.getArgument(0);
+        this.file = file;
 
-        this.ais = AudioSystem.getAudioInputStream(new File(file));
-        this.af = ais.getFormat();
+        // RF64 files are not recognized by AudioSystem, so use our own header parsing when possible
+        final RiffHeader riff = riffHeader(file);
+
+        // MP3 files are decoded as the frames are needed
+        final Mp3Reader mp3 = riff == null && Mp3Reader.isMp3(file) ?
+                new Mp3Reader(file, offset, length) : null;
+
+        final AudioFileFormat aff = riff != null || mp3 != null ? null :
+            AudioSystem.getAudioFileFormat(new File(file));
+        this.af = riff != null ? audioFormat(riff) : mp3 != null ? mp3.af : aff.getFormat();
         new Info("audio format: %s", af.toString());
 
         this.frameRate = Math.round(af.getFrameRate());
@@ -59,145 +76,219 @@ public final class Wav {
             new Death("cannot handle big-endian WAV file");
         }
 
-
-        this.frameLength = ais.getFrameLength();
+        this.frameLength = riff != null ? riff.nofFrames() : mp3 != null ? mp3.frameLength : aff.getFrameLength();
         new Info(".wav file length: %.1f s", (double)frameLength/frameRate);
         new Info("nof. frames: %d", frameLength);
 
         // find out nof frames to go in array
 
-        this.offset = GerkeLib.getIntOpt(GerkeDecoder.O_OFFSET);
-        this.length = GerkeLib.getIntOpt(GerkeDecoder.O_LENGTH);
+        this.offset = offset;
+        this.length = length;
 
         if (offset < 0) {
             new Death("offset cannot be negative");
         }
 
-        this.offsetFrames = offset*frameRate;
+        this.offsetFrames = (long) offset*frameRate;
         
-        if (length*frameRate > frameLength) {
+        if ((long) length*frameRate > frameLength) {
         	new Death("option -l (seconds) must not exceed wave file length");
         }
         
-        this.nofFrames = length == -1 ? ((int) (frameLength - offsetFrames)) :
-        	(int) Math.min(length*frameRate, frameLength - offsetFrames);
+        this.nofFrames = length == -1 ? frameLength - offsetFrames :
+        	Math.min((long) length*frameRate, frameLength - offsetFrames);
         
-        if (length*frameRate > frameLength - offsetFrames) {
+        if ((long) length*frameRate > frameLength - offsetFrames) {
         	new GerkeLib.Warning("option -l too large, using value: %d",
-        			             ((int)(frameLength - offsetFrames)/frameRate));
+        			             (int) ((frameLength - offsetFrames)/frameRate));
         }
 
         if (nofFrames < 0) {
             new Death("offset too large, WAV file length is: %f s", (double)frameLength/frameRate);
         }
 
-        this.wav = new short[nofFrames];
-
-        int frameCount = 0;
-
-        if (bpf == 1 && nch == 1) {
-            final int blockSize = frameRate;
-            for (int k = 0; true; k += blockSize) {
-                final byte[] b = new byte[blockSize];
-                final int nRead = ais.read(b, 0, blockSize);
-                if (k >= offsetFrames) {
-                    if (nRead == -1 || frameCount == nofFrames) {
-                        break;
-                    }
-                    for (int j = 0; j < nRead && frameCount < nofFrames; j++) {
-                        wav[k - offsetFrames + j] = (short) (100*b[j]);
-                        frameCount++;
-                    }
-                }
+        checkFrameFormat(bpf, nch);
+
+        if (riff != null) {
+            // map only the frames selected by the -o and -l options
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                this.wav = new MappedSampleSource(
+                        raf.getChannel(), riff.dataOffset, bpf, offsetFrames, nofFrames);
+            }
+            finally {
+                raf.close();
             }
+            new Info("memory-mapped frames: %d", nofFrames);
+        }
+        else if (mp3 != null) {
+            this.wav = mp3;
         }
-        else if (bpf == 2 && nch == 1) {
-            final int blockSize = bpf*frameRate;
-            for (int k = 0; true; k += blockSize) {
-                final byte[] b = new byte[blockSize];
-                final int nRead = ais.read(b, 0, blockSize);
-                if (k >= offsetFrames*bpf) {
-                    if (nRead == -1 || frameCount == nofFrames) {
-                        break;
-                    }
-                    for (int j = 0; j < nRead/bpf && frameCount < nofFrames; j++) {
-                        wav[k/bpf - offsetFrames + j] =
-                                (short) (256*b[bpf*j+1] + (b[bpf*j] < 0 ? (b[bpf*j] + 256) : b[bpf*j]));
-                        frameCount++;
-                    }
-                }
+        else {
+            final AudioInputStream ais = AudioSystem.getAudioInputStream(new File(file));
+            try {
+                this.wav = readFrames(ais, bpf);
+            }
+            finally {
+                ais.close();
             }
         }
-        else if (bpf == 3 && nch == 1) {
-         // 1 channel, 24 bits per channel, drop the least significant byte
-            final int blockSize = bpf*frameRate;
-            for (int k = 0; true; k += blockSize) {
-                final byte[] b = new byte[blockSize];
-                final int nRead = ais.read(b, 0, blockSize);
-                if (k >= offsetFrames*bpf) {
-                    if (nRead == -1 || frameCount == nofFrames) {
-                        break;
-                    }
-                    for (int j = 0; j < nRead/bpf && frameCount < nofFrames; j++) {
-                        wav[k/bpf - offsetFrames + j] =
-                                (short) (256*b[bpf*j+2] + (b[bpf*j+1] < 0 ? (b[bpf*j+1] + 256) : b[bpf*j+1]));
-                        frameCount++;
-                    }
-                }
+    }
+
+    public static String fileArgument() {
+        if (GerkeLib.nofArguments() != 1) {
+            new GerkeLib.Death("expecting one filename argument, try -h for help");
+        }
+        return GerkeLib.getArgument(0);
+    }
+
+    /**
+     * Wraps frames that were read from a stream. The offset is the
+     * position of the first frame in the stream.
+     */
+    Wav(String file, AudioFormat af, SampleSource wav, long offsetFrames) {
+        this.file = file;
+        this.af = af;
+        this.frameRate = Math.round(af.getFrameRate());
+        this.offsetFrames = offsetFrames;
+        this.offset = (int) (offsetFrames/frameRate);
+        this.length = -1;
+        this.wav = wav;
+        this.nofFrames = wav.length();
+        this.frameLength = offsetFrames + nofFrames;
+    }
+
+    static void checkFrameFormat(int bpf, int nch) {
+        if (!(bpf == 1 && nch == 1 ||
+                bpf == 2 && nch == 1 ||
+                bpf == 3 && nch == 1 ||
+                bpf == 4 && nch == 2 ||
+                bpf == 6 && nch == 2)) {
+            new Death("cannot handle bytesPerFrame: %d, nofChannels: %d", bpf, nch);
+        }
+    }
+
+    /**
+     * Returns the RIFF header if the file can be memory-mapped, otherwise null.
+     */
+    private RiffHeader riffHeader(String file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final RiffHeader riff = RiffHeader.parse(raf.getChannel());
+            return riff != null && riff.isPcm() ? riff : null;
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private static AudioFormat audioFormat(RiffHeader riff) {
+        return new AudioFormat(
+                riff.bitsPerSample <= 8 ? Encoding.PCM_UNSIGNED : Encoding.PCM_SIGNED,
+                riff.frameRate,
+                riff.bitsPerSample,
+                riff.nofChannels,
+                riff.bytesPerFrame,
+                riff.frameRate,
+                false);
+    }
+
+    /**
+     * Read frames from the stream into heap storage. Frames preceding
+     * the offset are skipped, not read.
+     */
+    private ArraySampleSource readFrames(AudioInputStream ais, int bpf) throws IOException {
+
+        final long skipBytes = offsetFrames*bpf;
+        for (long skipped = 0; skipped < skipBytes; ) {
+            final long nSkipped = ais.skip(skipBytes - skipped);
+            if (nSkipped <= 0) {
+                new Death("cannot skip to offset: %d s", offset);
             }
+            skipped += nSkipped;
         }
-        else if (bpf == 4 && nch == 2) {
-            final int blockSize = bpf*frameRate;
-            for (int k = 0; true; k += blockSize) {
-                final byte[] b = new byte[blockSize];
-                final int nRead = ais.read(b, 0, blockSize);
-                if (k >= offsetFrames*bpf) {
-                    if (nRead == -1 || frameCount == nofFrames) {
-                        break;
-                    }
-                    for (int j = 0; j < nRead/bpf && frameCount < nofFrames; j++) {
-                        final int left = (256*b[bpf*j+1] + (b[bpf*j] < 0 ? (b[bpf*j] + 256) : b[bpf*j]));
-                        final int right = (256*b[bpf*j+3] + (b[bpf*j+2] < 0 ? (b[bpf*j+2] + 256) : b[bpf*j+2]));
-                        wav[k/bpf - offsetFrames + j] =
-                                (short) ((left + right)/2);
-                        frameCount++;
-                    }
-                }
+
+        final ArraySampleSource wav = new ArraySampleSource(nofFrames);
+
+        final int blockSize = bpf*frameRate;
+        final byte[] b = new byte[blockSize];
+        for (long frameCount = 0; frameCount < nofFrames; ) {
+            // the stream delivers an integral number of frames
+            final int nRead = ais.read(b, 0, blockSize);
+            if (nRead == -1) {
+                break;
+            }
+            for (int j = 0; j < nRead/bpf && frameCount < nofFrames; j++) {
+                wav.set(frameCount, frameValue(b, bpf*j, bpf));
+                frameCount++;
             }
         }
+        return wav;
+    }
 
-        else if (bpf == 6 && nch == 2) {
+    /**
+     * Decode one frame, starting at index i in the given byte array.
+     */
+    static short frameValue(byte[] b, int i, int bpf) {
+        if (bpf == 1) {
+            // 1 channel, 8 bits
+            return (short) (100*b[i]);
+        }
+        else if (bpf == 2) {
+            // 1 channel, 16 bits
+            return (short) (256*b[i+1] + (b[i] < 0 ? (b[i] + 256) : b[i]));
+        }
+        else if (bpf == 3) {
+            // 1 channel, 24 bits, drop the least significant byte
+            return (short) (256*b[i+2] + (b[i+1] < 0 ? (b[i+1] + 256) : b[i+1]));
+        }
+        else if (bpf == 4) {
+            // 2 channels, 16 bits per channel
+            final int left = (256*b[i+1] + (b[i] < 0 ? (b[i] + 256) : b[i]));
+            final int right = (256*b[i+3] + (b[i+2] < 0 ? (b[i+2] + 256) : b[i+2]));
+            return (short) ((left + right)/2);
+        }
+        else {
             // 2 channels, 24 bits per channel, drop the least significant bytes
-            final int blockSize = bpf*frameRate;
-            for (int k = 0; true; k += blockSize) {
-                final byte[] b = new byte[blockSize];
-                final int nRead = ais.read(b, 0, blockSize);
-                if (k >= offsetFrames*bpf) {
-                    if (nRead == -1 || frameCount == nofFrames) {
-                        break;
-                    }
-                    for (int j = 0; j < nRead/bpf && frameCount < nofFrames; j++) {
-                        final int left = (256*b[bpf*j+2] + (b[bpf*j+1] < 0 ? (b[bpf*j+1] + 256) : b[bpf*j+1]));
-                        final int right = (256*b[bpf*j+5] + (b[bpf*j+4] < 0 ? (b[bpf*j+4] + 256) : b[bpf*j+4]));
-                        wav[k/bpf - offsetFrames + j] =
-                                (short) ((left + right)/2);
-                        frameCount++;
-                    }
-                }
+            final int left = (256*b[i+2] + (b[i+1] < 0 ? (b[i+1] + 256) : b[i+1]));
+            final int right = (256*b[i+5] + (b[i+4] < 0 ? (b[i+4] + 256) : b[i+4]));
+            return (short) ((left + right)/2);
+        }
+    }
+
+    /**
+     * Passes all frames, in order, to the given consumer. The frames are
+     * fetched by a reader thread through a bounded ring, so that reading
+     * overlaps with the processing done by the consumer.
+     */
+    public void scan(BlockConsumer c) throws InterruptedException {
+
+        final SampleRing ring = new SampleRing(RING_SHIFT);
+        final Thread reader = new Thread(new PcmReader(wav, ring), "pcm-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        final short[] block = new short[PcmReader.BLOCK_SIZE];
+        long frameCount = 0;
+        try {
+            for (int n = ring.take(block); n != -1; n = ring.take(block)) {
+                c.accept(block, n);
+                frameCount += n;
             }
         }
-        else {
-            ais.close();
-            new Death("cannot handle bytesPerFrame: %d, nofChannels: %d", bpf, nch);
+        finally {
+            reader.interrupt();
+        }
+        if (frameCount < nofFrames) {
+            new Death("read failed at frame: %d", frameCount);
         }
-        ais.close();
     }
 
     public double secondsFromSliceIndex(int q, int framesPerSlice) {
         return (((double) q)*framesPerSlice + offsetFrames)/frameRate;
     }
 
-    public int wavIndexFromSeconds(double t) {
-        return (int) Math.round(t*frameRate - offsetFrames);
+    public long wavIndexFromSeconds(double t) {
+        return Math.round(t*frameRate - offsetFrames);
     }
 }
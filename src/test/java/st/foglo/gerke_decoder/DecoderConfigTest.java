@@ -0,0 +1,123 @@
+package st.foglo.gerke_decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import st.foglo.gerke_decoder.GerkeDecoder.HiddenOpts;
+
+/**
+ * Builds configurations programmatically, without the command line and
+ * without running the option setup in GerkeDecoder.
+ */
+public class DecoderConfigTest {
+
+    @Test
+    public void defaults() {
+        final DecoderConfig cfg = new DecoderConfig(new HashMap<String, String>());
+
+        assertEquals(0, cfg.offset);
+        assertEquals(-1, cfg.length);
+        assertEquals(400.0, cfg.freqLow, 0.0);
+        assertEquals(1200.0, cfg.freqHigh, 0.0);
+        assertEquals(-1, cfg.freq);
+        assertEquals(15.0, cfg.wpm, 0.0);
+        assertEquals(-1, cfg.clipLevel);
+        assertEquals(7, cfg.decoder);
+        assertEquals("L", cfg.textCase);
+        assertEquals(72, cfg.lineLength);
+        assertEquals(10, cfg.latency);
+        assertEquals(-1, cfg.rawRate);
+        assertFalse(cfg.timestamps);
+        assertFalse(cfg.hasPlots());
+
+        assertEquals(0.002, cfg.getHiddenDouble(HiddenOpts.DIP), 0.0);
+        assertEquals("b", cfg.getHidden(HiddenOpts.FILTER));
+        assertEquals(2, cfg.getHiddenInt(HiddenOpts.ORDER));
+    }
+
+    @Test
+    public void givenValues() {
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put(GerkeDecoder.O_WPM, "20");
+        values.put(GerkeDecoder.O_DECODER, "1");
+        values.put(GerkeDecoder.O_STIME, "0.8");
+        values.put(GerkeDecoder.O_TSTAMPS, "true");
+        values.put(GerkeDecoder.O_TEXT_FORMAT, "U,40");
+        values.put(GerkeDecoder.O_HIDDEN, "0.003");
+
+        final DecoderConfig cfg = new DecoderConfig(values);
+
+        assertEquals(20.0, cfg.wpm, 0.0);
+        assertEquals(1, cfg.decoder);
+        assertEquals(0.8, cfg.tsStretch, 0.0);
+        assertEquals(true, cfg.timestamps);
+        assertEquals("U", cfg.textCase);
+        assertEquals(40, cfg.lineLength);
+
+        // hidden values that are not given keep their defaults
+        assertEquals(0.003, cfg.getHiddenDouble(HiddenOpts.DIP), 0.0);
+        assertEquals(0.002, cfg.getHiddenDouble(HiddenOpts.SPIKE), 0.0);
+    }
+
+    @Test
+    public void with() {
+        final DecoderConfig cfg = new DecoderConfig(new HashMap<String, String>());
+        final DecoderConfig changed = cfg.with(GerkeDecoder.O_FREQ, "700");
+
+        assertEquals(700, changed.freq);
+        assertEquals(-1, cfg.freq);
+        assertEquals(cfg.wpm, changed.wpm, 0.0);
+    }
+
+    @Test
+    public void defaultValue() {
+        assertEquals("15.0", DecoderConfig.defaultValue(GerkeDecoder.O_WPM));
+        assertNull(DecoderConfig.defaultValue(GerkeDecoder.O_TSTAMPS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badTextCase() {
+        config(GerkeDecoder.O_TEXT_FORMAT, "X");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badLineLength() {
+        config(GerkeDecoder.O_TEXT_FORMAT, "L,0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badFrequencyRange() {
+        config(GerkeDecoder.O_FRANGE, "400");
+    }
+
+    @Test
+    public void rawFormat() {
+        final DecoderConfig cfg = config(GerkeDecoder.O_RAW_FORMAT, "8000,16,1");
+
+        assertEquals(8000, cfg.rawRate);
+        assertEquals(16, cfg.rawBits);
+        assertEquals(1, cfg.rawChannels);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badRawFormat() {
+        config(GerkeDecoder.O_RAW_FORMAT, "8000,12,1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badNumber() {
+        config(GerkeDecoder.O_WPM, "fast");
+    }
+
+    private static DecoderConfig config(String key, String value) {
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put(key, value);
+        return new DecoderConfig(values);
+    }
+}
@@ -0,0 +1,77 @@
+package st.foglo.gerke_decoder;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import st.foglo.gerke_decoder.GerkeLib.Debug;
+import st.foglo.gerke_decoder.GerkeLib.Message;
+import st.foglo.gerke_decoder.GerkeLib.Trace;
+
+/**
+ * Cost of log messages that are not output, at default verbosity. The
+ * eager variants do what the message constructors did before they
+ * checked the level first: format the text, then look up the verbosity
+ * option. Results are in ns per message.
+ *
+ * Run with: mvn -P jmh test-compile exec:exec -Djmh.args=LoggingBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggingBenchmark {
+
+    private int segIndex = 17;
+    private double f = 703.25;
+    private double h = 2.5;
+
+    @Setup
+    public void setup() throws ClassNotFoundException {
+        // registers the options, the verbosity option among them
+        Class.forName(GerkeDecoder.class.getName());
+        GerkeLib.parseArgs(new String[0]);
+    }
+
+    @Benchmark
+    public Message traceGuarded() {
+        return new Trace("[%d] frequency: %.2f, spacing: %.2f", segIndex, f, h);
+    }
+
+    @Benchmark
+    public Message traceEager() {
+        return new Message("TRACE",
+                String.format("[%d] frequency: %.2f, spacing: %.2f", segIndex, f, h),
+                GerkeLib.getIntOpt(GerkeDecoder.O_VERBOSE) >= GerkeLib.TRACE);
+    }
+
+    @Benchmark
+    public Message traceHoisted() {
+        // as in loops, where the check is done once before the loop
+        return GerkeLib.isEnabled(GerkeLib.TRACE) ?
+                new Trace("[%d] frequency: %.2f, spacing: %.2f", segIndex, f, h) : null;
+    }
+
+    @Benchmark
+    public Message debugGuarded() {
+        return new Debug("segment analysis took ms: %d", segIndex);
+    }
+
+    @Benchmark
+    public Message debugEager() {
+        return new Message("DEBUG",
+                String.format("segment analysis took ms: %d", segIndex),
+                GerkeLib.getIntOpt(GerkeDecoder.O_VERBOSE) >= GerkeLib.DEBUG);
+    }
+}
@@ -0,0 +1,105 @@
+package st.foglo.gerke_decoder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.CompilerControl;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the block method of the lowpass filters with calling the
+ * per-sample method once per value. Results are in ns per sample.
+ *
+ * The per-sample loop is warmed up with every filter type first, so that
+ * its call site sees several receivers, as the one in the detector does.
+ *
+ * Run with: mvn -P jmh test-compile exec:exec -Djmh.args=LowpassFilterBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LowpassFilterBenchmark {
+
+    private static final int BLOCK = 4096;
+
+    private static final int RATE = 8000;                   // frames/s
+    private static final double CUTOFF = 25.0;              // Hz, 2/TU at 15 WPM
+
+    @Param({"butterworth", "chebyshev", "window", "sum"})
+    public String type;
+
+    private final double[] in = new double[BLOCK];
+    private final double[] out = new double[BLOCK];
+
+    private LowpassFilter filter;
+
+    @Setup
+    public void setup() throws ClassNotFoundException {
+        // registers the option defaults that logging depends on
+        Class.forName(GerkeDecoder.class.getName());
+
+        final Random random = new Random(1);
+        for (int i = 0; i < BLOCK; i++) {
+            in[i] = random.nextGaussian();
+        }
+
+        for (String t : new String[]{"butterworth", "chebyshev", "window", "sum"}) {
+            final LowpassFilter f = create(t);
+            for (int k = 0; k < 2000; k++) {
+                perSample(f, in, out);
+            }
+        }
+
+        filter = create(type);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public double[] perSample() {
+        perSample(filter, in, out);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public double[] block() {
+        filter.filter(in, 0, BLOCK, out);
+        return out;
+    }
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static void perSample(LowpassFilter f, double[] in, double[] out) {
+        for (int i = 0; i < in.length; i++) {
+            out[i] = f.filter(in[i]);
+        }
+    }
+
+    private static LowpassFilter create(String type) {
+        if (type.equals("butterworth")) {
+            return new LowpassButterworth(2, RATE, CUTOFF, 0.0);
+        }
+        else if (type.equals("chebyshev")) {
+            return new LowpassChebyshevI(4, RATE, CUTOFF, 1.5);
+        }
+        else if (type.equals("window")) {
+            return new LowpassWindow(RATE, CUTOFF);
+        }
+        else {
+            return new LowpassTimeSliceSum(38);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package st.foglo.gerke_decoder.detector.adaptive;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import st.foglo.gerke_decoder.detector.TrigTable;
+import st.foglo.gerke_decoder.wave.SampleSource;
+
+/**
+ * Compares ClipLoss with clipping and demodulation of every sample.
+ */
+public class ClipLossTest {
+
+    private static final int FRAME_RATE = 8000;
+    private static final int CHUNK_SIZE = 160;
+    private static final int NOF_CHUNK = 25;
+    private static final int BASE = 37;
+
+    @Test
+    public void randomSegments() {
+        final Random random = new Random(4711);
+        for (int n = 0; n < 20; n++) {
+            final short[] samples = segment(random, BASE + NOF_CHUNK*CHUNK_SIZE);
+            final TrigTable trigTable = new TrigTable(400 + random.nextInt(800), CHUNK_SIZE, FRAME_RATE);
+            final ClipLoss clipLoss = new ClipLoss(source(samples), BASE, CHUNK_SIZE, NOF_CHUNK, trigTable);
+
+            int maxAbsValue = 0;
+            for (int k = BASE; k < samples.length; k++) {
+                maxAbsValue = Math.max(maxAbsValue, Math.abs((int) samples[k]));
+            }
+
+            final int[] levels = {
+                    0, 1, 127, 128, 129, 255, 256, 257,
+                    4095, 4096, 4097, 16383, 16384,
+                    32639, 32640, 32641,
+                    maxAbsValue - 1, maxAbsValue,
+                    32767, 32768};
+            for (int level : levels) {
+                assertEquals("level: " + level,
+                        bruteForce(samples, trigTable, level),
+                        clipLoss.amount(level),
+                        1e-9);
+            }
+            for (int k = 0; k < 50; k++) {
+                final int level = random.nextInt(32769);
+                assertEquals("level: " + level,
+                        bruteForce(samples, trigTable, level),
+                        clipLoss.amount(level),
+                        1e-9);
+            }
+        }
+    }
+
+    /**
+     * Tone plus noise, with some samples replaced by bucket edges and
+     * by the extreme values.
+     */
+    private static short[] segment(Random random, int size) {
+        final short[] result = new short[size];
+        final double amplitude = 2000 + random.nextInt(20000);
+        for (int k = 0; k < size; k++) {
+            final double x = amplitude*Math.sin(2*Math.PI*700*k/FRAME_RATE) + 3000*random.nextGaussian();
+            result[k] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(x)));
+            final int u = random.nextInt(20);
+            if (u == 0) {
+                result[k] = Short.MIN_VALUE;
+            }
+            else if (u == 1) {
+                result[k] = Short.MAX_VALUE;
+            }
+            else if (u == 2) {
+                final int edge = 128*random.nextInt(256) + random.nextInt(3) - 1;
+                result[k] = (short) (random.nextBoolean() ? edge : -edge);
+            }
+        }
+        return result;
+    }
+
+    private static SampleSource source(final short[] samples) {
+        return new SampleSource() {
+            @Override
+            public short get(long k) {
+                return samples[(int) k];
+            }
+
+            @Override
+            public long length() {
+                return samples.length;
+            }
+        };
+    }
+
+    private static double bruteForce(short[] samples, TrigTable trigTable, int level) {
+        double sum = 0.0;
+        double sumClipped = 0.0;
+        for (int c = 0; c < NOF_CHUNK; c++) {
+            double s = 0.0;
+            double t = 0.0;
+            double sClipped = 0.0;
+            double tClipped = 0.0;
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                final int value = samples[BASE + c*CHUNK_SIZE + i];
+                final int clipped = Math.max(-level, Math.min(level, value));
+                s += trigTable.sin(i)*value;
+                t += trigTable.cos(i)*value;
+                sClipped += trigTable.sin(i)*clipped;
+                tClipped += trigTable.cos(i)*clipped;
+            }
+            sum += Math.sqrt(s*s + t*t);
+            sumClipped += Math.sqrt(sClipped*sClipped + tClipped*tClipped);
+        }
+        return 1.0 - sumClipped/sum;
+    }
+}
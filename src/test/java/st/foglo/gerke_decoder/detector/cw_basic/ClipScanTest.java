@@ -0,0 +1,152 @@
+package st.foglo.gerke_decoder.detector.cw_basic;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import st.foglo.gerke_decoder.DecoderConfig;
+import st.foglo.gerke_decoder.GerkeDecoder;
+import st.foglo.gerke_decoder.detector.TrigTable;
+import st.foglo.gerke_decoder.wave.PcmStream;
+import st.foglo.gerke_decoder.wave.Wav;
+
+/**
+ * Compares the clipped signal averages of ClipScan, and the clip level
+ * that is estimated from them, with clipping every sample for one level
+ * at a time.
+ */
+public class ClipScanTest {
+
+    private static final int FRAME_RATE = 8000;
+    private static final int FRAMES_PER_SLICE = 40;
+    private static final int FREQ = 700;
+
+    @BeforeClass
+    public static void registerOptions() throws ClassNotFoundException {
+        // registers the option defaults that logging depends on
+        Class.forName(GerkeDecoder.class.getName());
+    }
+
+    @Test
+    public void signalAverages() {
+        final Random random = new Random(4711);
+        final short[] samples = toneAndNoise(random, 100*FRAMES_PER_SLICE + 17, 6000.0, 2000.0);
+        for (int k = 0; k < samples.length; k += 13) {
+            samples[k] = Short.MIN_VALUE;
+        }
+        for (int k = 5; k < samples.length; k += 29) {
+            samples[k] = Short.MAX_VALUE;
+        }
+
+        final int[] levels = {0, 1, 100, 1000, 4096, 8191, 8192, 16384, 32766, 32767};
+        for (int k = 7; k < samples.length; k += 11) {
+            final int level = levels[random.nextInt(levels.length)];
+            samples[k] = (short) (random.nextBoolean() ? level : -level);
+        }
+
+        final ClipScan scan = new ClipScan(FREQ, FRAMES_PER_SLICE, FRAME_RATE, levels);
+        for (int k = 0; k < samples.length; ) {
+            final int n = Math.min(1 + random.nextInt(100), samples.length - k);
+            final short[] block = new short[n];
+            System.arraycopy(samples, k, block, 0, n);
+            scan.accept(block, n);
+            k += n;
+        }
+        final double[] averages = scan.signalAverages();
+
+        final double tolerance = 1e-9*signalAverage(samples, FREQ, Short.MAX_VALUE);
+        for (int g = 0; g < levels.length; g++) {
+            assertEquals("level: " + levels[g],
+                    signalAverage(samples, FREQ, levels[g]), averages[g], tolerance);
+        }
+    }
+
+    @Test
+    public void estimateClipLevel() throws Exception {
+        final Random random = new Random(17);
+        for (double noise : new double[] {500.0, 2000.0, 8000.0}) {
+            final short[] samples = toneAndNoise(random, 5*FRAME_RATE, 4000.0, noise);
+            final Wav w = wav(samples);
+            assertEquals("noise: " + noise,
+                    binarySearch(samples, FREQ),
+                    CwBasicImpl.estimateClipLevel(w, FRAMES_PER_SLICE, FREQ));
+        }
+    }
+
+    private static short[] toneAndNoise(Random random, int size, double amplitude, double noise) {
+        final short[] result = new short[size];
+        for (int k = 0; k < size; k++) {
+            final double x = amplitude*Math.sin(2*Math.PI*FREQ*k/FRAME_RATE) + noise*random.nextGaussian();
+            result[k] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(x)));
+        }
+        return result;
+    }
+
+    private static Wav wav(short[] samples) throws Exception {
+        final byte[] bytes = new byte[2*samples.length];
+        for (int k = 0; k < samples.length; k++) {
+            bytes[2*k] = (byte) samples[k];
+            bytes[2*k + 1] = (byte) (samples[k] >> 8);
+        }
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put(GerkeDecoder.O_RAW_FORMAT, FRAME_RATE + ",16,1");
+        final PcmStream stream = new PcmStream(new ByteArrayInputStream(bytes), new DecoderConfig(values));
+        return stream.next(0, samples.length);
+    }
+
+    /**
+     * The clip level search, with every probe computed by signalAverage.
+     */
+    private static int binarySearch(short[] samples, int f) {
+        final double delta = GerkeDecoder.P_CLIP_PREC*(1.0 - GerkeDecoder.P_CLIP_STRENGTH);
+        final double uNoClip = signalAverage(samples, f, Short.MAX_VALUE);
+        int hi = Short.MAX_VALUE;
+        int lo = 0;
+        for (; true;) {
+            final int midpoint = (hi + lo)/2;
+            if (midpoint == lo) {
+                return hi;
+            }
+            final double uNew = signalAverage(samples, f, midpoint);
+            if ((1 - GerkeDecoder.P_CLIP_STRENGTH)*uNoClip > uNew && uNew > (1 - GerkeDecoder.P_CLIP_STRENGTH - delta)*uNoClip) {
+                return midpoint;
+            }
+            else if (uNew >= (1 - GerkeDecoder.P_CLIP_STRENGTH)*uNoClip) {
+                hi = midpoint;
+            }
+            else {
+                lo = midpoint;
+            }
+        }
+    }
+
+    /**
+     * Average signal at frequency f, with every sample clipped at the
+     * given level. A trailing incomplete slice is ignored.
+     */
+    private static double signalAverage(short[] samples, int f, int clipLevel) {
+        final TrigTable trigTable = new TrigTable(f, FRAMES_PER_SLICE, FRAME_RATE);
+        double rSum = 0.0;
+        int divisor = 0;
+        for (int q = 0; samples.length - q*FRAMES_PER_SLICE >= FRAMES_PER_SLICE; q++) {
+            double sinAcc = 0.0;
+            double cosAcc = 0.0;
+            for (int j = 0; j < FRAMES_PER_SLICE; j++) {
+                final int ampRaw = samples[q*FRAMES_PER_SLICE + j];
+                final int amp = ampRaw < 0 ? Math.max(ampRaw, -clipLevel) : Math.min(ampRaw, clipLevel);
+                sinAcc += trigTable.sin(j)*amp;
+                cosAcc += trigTable.cos(j)*amp;
+            }
+            final double r = Math.sqrt(sinAcc*sinAcc + cosAcc*cosAcc)/FRAMES_PER_SLICE;
+            rSum += FRAMES_PER_SLICE*r;
+            divisor += FRAMES_PER_SLICE;
+        }
+        return rSum/divisor;
+    }
+}